@@ -0,0 +1,45 @@
+package de.balpha.obligation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// the cost per instruction of running a chain of trivial providers, either on the main thread or as async
+// instructions that go to a worker and back
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+    private static final int LENGTH = 100;
+
+    private InstructionSet mSyncChain;
+    private InstructionSet mAsyncChain;
+    private ExecutorDispatcher mDispatcher;
+
+    @Setup
+    public void setUp() {
+        mSyncChain = SyntheticGraphs.chain(LENGTH, false);
+        mAsyncChain = SyntheticGraphs.chain(LENGTH, true);
+        mDispatcher = new ExecutorDispatcher();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDispatcher.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public void sync() throws InterruptedException {
+        SyntheticGraphs.fulfill(mSyncChain, mDispatcher);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public void async() throws InterruptedException {
+        SyntheticGraphs.fulfill(mAsyncChain, mDispatcher);
+    }
+}
@@ -0,0 +1,39 @@
+package de.balpha.obligation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// complete fulfillments of random DAGs, as seen from the caller: from fulfill() to onComplete()
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FulfillmentBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int nodes;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private InstructionSet mSet;
+    private ExecutorDispatcher mDispatcher;
+
+    @Setup
+    public void setUp() {
+        mSet = SyntheticGraphs.random(nodes, 4711, async);
+        mDispatcher = new ExecutorDispatcher();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDispatcher.shutdown();
+    }
+
+    @Benchmark
+    public void fulfill() throws InterruptedException {
+        SyntheticGraphs.fulfill(mSet, mDispatcher);
+    }
+}
@@ -0,0 +1,32 @@
+package de.balpha.obligation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// reflection-based instruction set building (what the first fulfill() of a class pays), by number of obligation methods
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstructionSetBenchmark {
+    @Param({"4", "16", "64", "256"})
+    public int methods;
+
+    private Class<? extends Obligation> mClass;
+
+    @Setup
+    public void setUp() throws Exception {
+        mClass = SyntheticObligations.compile(methods);
+        String error = Obligation.checkObligation(mClass);
+        if (error != null)
+            throw new IllegalStateException(error);
+    }
+
+    @Benchmark
+    public String buildInstructionSet() {
+        return Obligation.checkObligation(mClass); // builds the instruction set from scratch every time
+    }
+}
@@ -0,0 +1,47 @@
+package de.balpha.obligation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Job.prepare() and the readiness tracking, on layered graphs of varying width and depth
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobBenchmark {
+    @Param({"1", "10", "100"})
+    public int width;
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private InstructionSet mSet;
+    private ExecutorDispatcher mDispatcher;
+
+    @Setup
+    public void setUp() {
+        mSet = SyntheticGraphs.layered(width, depth, false);
+        mDispatcher = new ExecutorDispatcher(1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDispatcher.shutdown();
+    }
+
+    @Benchmark
+    public Job prepare() {
+        Job job = mSet.createJob(new SyntheticGraphs.LatchObligation());
+        job.prepare(mDispatcher);
+        return job;
+    }
+
+    // all instructions are sync, so this is prepare() plus running each one and counting down its dependents' pending inputs
+    @Benchmark
+    public Job prepareAndRun() {
+        return SyntheticGraphs.fulfillSync(mSet, mDispatcher);
+    }
+}
@@ -0,0 +1,142 @@
+package de.balpha.obligation;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Builds instruction sets directly, without an obligation class behind them, so the benchmarks can
+ * use graphs of any size and shape. Every instruction is a provider that returns a constant.
+ */
+/* package */ class SyntheticGraphs {
+    private static final Integer VALUE = 42;
+
+    private static final Invoker CONSTANT = new Invoker() {
+        @Override
+        public Object invoke(Obligation target, Object[] args) {
+            return VALUE;
+        }
+    };
+
+    private static final Invoker NOTHING = new Invoker() {
+        @Override
+        public Object invoke(Obligation target, Object[] args) {
+            return null;
+        }
+    };
+
+    /* package */ static class LatchObligation extends Obligation {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        protected void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private static Instruction instruction(int result, int[] needed, boolean async) {
+        Instruction inst = new Instruction();
+        inst.result = result;
+        inst.needed = needed;
+        inst.parameterCount = needed.length;
+        inst.name = result >= 0 ? "provider" + result : "goal";
+        inst.resultType = result >= 0 ? int.class : void.class;
+        inst.invoker = result >= 0 ? CONSTANT : NOTHING;
+        inst.async = async;
+        inst.pool = async ? "" : null;
+        inst.goal = result < 0;
+        return inst;
+    }
+
+    private static InstructionSet assemble(ArrayList<int[]> needs, int[] goalNeeds, boolean async) {
+        InstructionSet set = new InstructionSet();
+        set.providers = new Instruction[needs.size()];
+        int[] ids = new int[needs.size()];
+        for (int i = 0; i < needs.size(); i++) {
+            set.providers[i] = instruction(i, needs.get(i), async);
+            ids[i] = i + 1;
+        }
+        set.idMap = new IdMap(ids);
+        set.goals = new Instruction[] { instruction(-1, goalNeeds, false) };
+        set.link();
+        return set;
+    }
+
+    // depth layers of width providers each; every provider needs two providers of the previous layer,
+    // and the goal needs the whole last layer
+    static InstructionSet layered(int width, int depth, boolean async) {
+        ArrayList<int[]> needs = new ArrayList<int[]>();
+        for (int layer = 0; layer < depth; layer++) {
+            for (int i = 0; i < width; i++) {
+                if (layer == 0) {
+                    needs.add(new int[0]);
+                } else {
+                    int previous = (layer - 1) * width;
+                    needs.add(width > 1 ? new int[] { previous + i, previous + (i + 1) % width } : new int[] { previous });
+                }
+            }
+        }
+        int[] goalNeeds = new int[width];
+        for (int i = 0; i < width; i++)
+            goalNeeds[i] = (depth - 1) * width + i;
+        return assemble(needs, goalNeeds, async);
+    }
+
+    // a straight line of providers, each needing the one before
+    static InstructionSet chain(int length, boolean async) {
+        return layered(1, length, async);
+    }
+
+    // every provider needs up to two random earlier ones; the goal needs all providers nobody else needs
+    static InstructionSet random(int nodes, long seed, boolean async) {
+        Random random = new Random(seed);
+        ArrayList<int[]> needs = new ArrayList<int[]>();
+        boolean[] needed = new boolean[nodes];
+        for (int i = 0; i < nodes; i++) {
+            int[] n;
+            if (i == 0) {
+                n = new int[0];
+            } else if (i == 1) {
+                n = new int[] { 0 };
+            } else {
+                int a = random.nextInt(i);
+                int b = random.nextInt(i);
+                n = a == b ? new int[] { a } : new int[] { a, b };
+            }
+            for (int dep : n)
+                needed[dep] = true;
+            needs.add(n);
+        }
+        int count = 0;
+        for (int i = 0; i < nodes; i++)
+            if (!needed[i])
+                count++;
+        int[] goalNeeds = new int[count];
+        for (int i = 0, j = 0; i < nodes; i++)
+            if (!needed[i])
+                goalNeeds[j++] = i;
+        return assemble(needs, goalNeeds, async);
+    }
+
+    // prepares and runs a job on the dispatcher's main thread, and waits for onComplete()
+    static void fulfill(InstructionSet set, final ExecutorDispatcher dispatcher) throws InterruptedException {
+        final LatchObligation obligation = new LatchObligation();
+        final Job job = set.createJob(obligation);
+        dispatcher.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                job.prepare(dispatcher);
+                job.go();
+            }
+        });
+        obligation.done.await();
+    }
+
+    // for sync-only graphs, which never touch the dispatcher; runs on the calling thread
+    static Job fulfillSync(InstructionSet set, Dispatcher dispatcher) {
+        Job job = set.createJob(new LatchObligation());
+        job.prepare(dispatcher);
+        job.go();
+        return job;
+    }
+}
@@ -0,0 +1,54 @@
+package de.balpha.obligation;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Generates and compiles real obligation classes with a given number of obligation methods, for
+ * measuring the reflection-based instruction set building. Needs a JDK, not just a JRE.
+ */
+/* package */ class SyntheticObligations {
+    // a chain of providers, each needing the previous one, and a goal at the end
+    static String source(String className, int methods) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("public class ").append(className).append(" extends de.balpha.obligation.Obligation {\n");
+        sb.append("    @de.balpha.obligation.Provides(1) int p1() { return 1; }\n");
+        for (int i = 2; i < methods; i++) {
+            sb.append("    @de.balpha.obligation.Needs(").append(i - 1).append(") @de.balpha.obligation.Provides(").append(i)
+                    .append(") int p").append(i).append("(int x) { return x + 1; }\n");
+        }
+        sb.append("    @de.balpha.obligation.Needs(").append(methods - 1).append(") @de.balpha.obligation.Goal void goal(int x) { }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Class<? extends Obligation> compile(int methods) throws IOException, ClassNotFoundException {
+        if (methods < 2)
+            throw new IllegalArgumentException("need at least a provider and a goal");
+        String className = "Synthetic" + methods;
+        File dir = File.createTempFile("obligation", "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("could not create " + dir);
+        File file = new File(dir, className + ".java");
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(source(className, methods));
+        } finally {
+            writer.close();
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("no Java compiler available; run the benchmarks on a JDK");
+        int status = compiler.run(null, null, null, "-proc:none", "-cp", System.getProperty("java.class.path"), "-d", dir.getPath(), file.getPath());
+        if (status != 0)
+            throw new IllegalStateException("could not compile " + className);
+        URLClassLoader loader = new URLClassLoader(new URL[] { dir.toURI().toURL() }, SyntheticObligations.class.getClassLoader());
+        return (Class<? extends Obligation>) loader.loadClass(className);
+    }
+}
@@ -0,0 +1,37 @@
+package de.balpha.obligation;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The default {@link Dispatcher} on Android: non-async obligation methods run on the UI thread, async
+ * ones on a small thread pool, and their results are posted back to the UI thread, like an AsyncTask does.
+ */
+public class AndroidDispatcher implements Dispatcher {
+    private static ExecutorService sThreadPool = Executors.newFixedThreadPool(Pools.defaultSize());
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    @Override
+    public void runOnMainThread(Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    @Override
+    public void runOnMainThreadDelayed(Runnable runnable, long delayMillis) {
+        mHandler.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void runInBackground(Runnable runnable) {
+        sThreadPool.execute(runnable);
+    }
+}
@@ -0,0 +1,42 @@
+package de.balpha.obligation;
+
+import android.content.Context;
+import dalvik.system.DexFile;
+
+import java.io.IOException;
+import java.util.Enumeration;
+
+/**
+ * Android-specific helpers that can't live in {@link Obligation}, which is platform-neutral.
+ */
+public final class AndroidObligations {
+    private AndroidObligations() { }
+
+    public static String checkAllObligationsInPackage(Context context) {
+        try {
+            return checkAllObligationsInPackageImpl(context);
+        } catch (Exception ex) {
+            return ex.getMessage();
+        }
+    }
+
+    private static String checkAllObligationsInPackageImpl(Context context) throws IOException {
+        Enumeration<String> allClasses = new DexFile(context.getPackageCodePath()).entries();
+        while (allClasses.hasMoreElements()) {
+            String classname = allClasses.nextElement();
+            Class<?> cls;
+            try {
+                cls = Class.forName(classname);
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            if (Obligation.class.isAssignableFrom(cls) && cls != Obligation.class) {
+                //noinspection unchecked
+                String e = Obligation.checkObligation((Class<? extends Obligation>) cls);
+                if (e != null)
+                    return classname + ": " + e;
+            }
+        }
+        return null;
+    }
+}
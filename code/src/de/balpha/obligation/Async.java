@@ -1,8 +0,0 @@
-package de.balpha.obligation;
-
-import java.lang.annotation.*;
-
-@Target(ElementType.METHOD)
-@Retention(RetentionPolicy.RUNTIME)
-public @interface Async {
-}
@@ -0,0 +1,13 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Async {
+    /**
+     * The name of the {@link Pools pool} to run the method on, e.g. {@link Pools#IO} or {@link Pools#COMPUTE}.
+     * By default, it runs on the dispatcher's background threads.
+     */
+    public String pool() default "";
+}
@@ -0,0 +1,190 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+// collects the calls of a @Batched provider into batches; like a ResultCache, this lives in the provider's
+// Instruction and is thus shared by all instances of the obligation class
+/* package */ class BatchCalls {
+    private final long mWindow;
+    private final int mMaxSize;
+    private Batch mOpen; // the batch new calls are added to, or null; guarded by this
+
+    BatchCalls(long window, int maxSize) {
+        mWindow = window;
+        mMaxSize = maxSize;
+    }
+
+    // called on the job's main thread
+    void add(Job job, Job.AsyncRun task) {
+        Batch full = null;
+        synchronized (this) {
+            if (mOpen == null) {
+                final Batch batch = new Batch(job, task.mInst);
+                Runnable close = new Runnable() {
+                    @Override
+                    public void run() {
+                        close(batch);
+                    }
+                };
+                if (mWindow > 0)
+                    job.mDispatcher.runOnMainThreadDelayed(close, mWindow);
+                else
+                    job.mDispatcher.runOnMainThread(close);
+                mOpen = batch;
+            }
+            mOpen.mMembers.add(task);
+            mOpen.mKeySet.add(task.mArgs[0]);
+            task.mSharedWork = mOpen;
+            if (mMaxSize > 0 && mOpen.mKeySet.size() >= mMaxSize)
+                full = mOpen;
+        }
+        if (full != null)
+            close(full);
+    }
+
+    // no more calls go into the batch; it's started with the keys that are still needed
+    private void close(Batch batch) {
+        synchronized (this) {
+            if (batch.mClosed)
+                return;
+            batch.mClosed = true;
+            if (mOpen == batch)
+                mOpen = null;
+            HashMap<Object, Integer> keyIndices = new HashMap<Object, Integer>();
+            for (Job.AsyncRun member : batch.mMembers) {
+                if (member.isCancelled())
+                    continue;
+                Object key = member.mArgs[0];
+                Integer index = keyIndices.get(key);
+                if (index == null) {
+                    index = batch.mKeys.size();
+                    keyIndices.put(key, index);
+                    batch.mKeys.add(key);
+                }
+                batch.mLive.add(member);
+                batch.mLiveKeys.add(index);
+            }
+            if (batch.mLive.isEmpty()) {
+                batch.mAbandoned = true;
+                return;
+            }
+        }
+        batch.mJob.runInBackground(batch.mInst, batch);
+    }
+
+    // one actual call of the method
+    /* package */ class Batch implements Runnable, Job.SharedWork, RetryPolicy.Caller {
+        private final Job mJob; // the job that started the batch; the method is called on its obligation
+        private final Instruction mInst;
+        private final CancellationToken mToken = new CancellationToken();
+
+        // guarded by BatchCalls.this
+        private final ArrayList<Job.AsyncRun> mMembers = new ArrayList<Job.AsyncRun>();
+        private final HashSet<Object> mKeySet = new HashSet<Object>();
+        private boolean mClosed = false;
+        private boolean mStarted = false;
+        private boolean mAbandoned = false;
+        private Thread mThread; // while running
+        private int mAttempts = 0; // only used by the thread making the attempt
+
+        // set when the batch is closed
+        private final ArrayList<Object> mKeys = new ArrayList<Object>();
+        private final ArrayList<Job.AsyncRun> mLive = new ArrayList<Job.AsyncRun>();
+        private final ArrayList<Integer> mLiveKeys = new ArrayList<Integer>(); // for each of mLive, its index in mKeys
+
+        private Batch(Job job, Instruction inst) {
+            mJob = job;
+            mInst = inst;
+        }
+
+        @Override
+        public boolean leave(boolean interrupt) {
+            synchronized (BatchCalls.this) {
+                if (!mClosed)
+                    return true; // its key won't be passed, unless another call needs it as well
+                if (!Job.allCancelled(mLive))
+                    return false;
+            }
+            // nobody can join a closed batch; cancel the token first, so an interrupted method sees it as cancelled
+            mToken.cancel();
+            synchronized (BatchCalls.this) {
+                if (!mStarted) {
+                    mAbandoned = true;
+                    return true;
+                }
+                if (interrupt && mThread != null) {
+                    mThread.interrupt();
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public Obligation target() {
+            return mJob.mObligation;
+        }
+
+        @Override
+        public CancellationToken token() {
+            return mToken;
+        }
+
+        @Override
+        public boolean isWanted() {
+            synchronized (BatchCalls.this) {
+                return !Job.allCancelled(mLive);
+            }
+        }
+
+        @Override
+        public void retry() {
+            mJob.runInBackground(mInst, this);
+        }
+
+        @Override
+        public void run() {
+            synchronized (BatchCalls.this) {
+                if (mAbandoned)
+                    return;
+                mStarted = true;
+                mThread = Thread.currentThread();
+            }
+            List<?> results = null;
+            InvocationTargetException exception = null;
+            long start = System.nanoTime();
+            try {
+                Object result = Job.callShared(this, mInst, new Object[] { mKeys }, this, ++mAttempts);
+                if (result == RetryPolicy.RETRYING) {
+                    synchronized (BatchCalls.this) {
+                        mThread = null;
+                        Thread.interrupted(); // don't leave an interrupt meant for us to the next task on this thread
+                        mStarted = false; // until the next attempt
+                    }
+                    return;
+                }
+                mInst.recordRunTime(System.nanoTime() - start);
+                if (!(result instanceof List) || ((List<?>) result).size() != mKeys.size()) {
+                    int size = result instanceof List ? ((List<?>) result).size() : 0;
+                    throw new InvocationTargetException(new RuntimeException("Batched obligation method " + mInst.name + " returned " + size + " results for " + mKeys.size() + " keys"));
+                }
+                results = (List<?>) result;
+            } catch (InvocationTargetException e) {
+                exception = e;
+            }
+            synchronized (BatchCalls.this) {
+                mThread = null;
+                Thread.interrupted(); // don't leave an interrupt meant for us to the next task on this thread
+            }
+            long end = System.nanoTime();
+            for (Job.AsyncRun member : mLive)
+                member.reportRun(start, end);
+            for (int i = 0; i < mLive.size(); i++)
+                mLive.get(i).deliver(results != null ? results.get(mLiveKeys.get(i)) : null, exception);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks an {@code @Async} provider method that gets the data for many keys at once, across obligation
+ * instances. The method has a single parameter, a {@code List} of keys (the object id it {@code @Needs}), and
+ * returns a {@code List} with the result for each key, in the same order. Each obligation instance still only
+ * asks for its own key; the calls that come in together are collected, and equal keys are only passed once.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Batched {
+    /**
+     * How long to wait for more keys, in milliseconds. By default, the keys from all obligations that are
+     * fulfilled while the UI thread is busy with one thing (e.g. binding the rows of a list) go into one call.
+     */
+    public long window() default 0;
+    /** the largest number of keys passed in one call; 0 means no limit */
+    public int maxSize() default 0;
+}
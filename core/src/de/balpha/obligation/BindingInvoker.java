@@ -0,0 +1,67 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+
+/* package */ class BindingInvoker implements Invoker {
+    private final ObligationBinding mBinding;
+    private final int mIndex;
+    private final char mKind; // of the method's return type
+
+    BindingInvoker(ObligationBinding binding, int index, Class<?> returnType) {
+        mBinding = binding;
+        mIndex = index;
+        mKind = Primitives.kind(returnType);
+    }
+
+    // the arguments of a call through the Invoker interface
+    private static class ArrayArguments implements ObligationBinding.Arguments {
+        private final Object[] mArgs;
+
+        ArrayArguments(Object[] args) {
+            mArgs = args;
+        }
+
+        @Override
+        public Object get(int i) {
+            return mArgs[i];
+        }
+
+        @Override
+        public long getLong(int i) {
+            return Primitives.toLong(mArgs[i]);
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return ((Number) mArgs[i]).doubleValue();
+        }
+    }
+
+    @Override
+    public Object invoke(Obligation target, Object[] args) throws InvocationTargetException {
+        ObligationBinding.Arguments arguments = new ArrayArguments(args);
+        if (mKind == Primitives.NONE)
+            return invoke(target, arguments);
+        return Primitives.box(mKind, invokeBits(target, arguments));
+    }
+
+    // for methods that don't return a primitive type
+    Object invoke(Obligation target, ObligationBinding.Arguments args) throws InvocationTargetException {
+        try {
+            return mBinding.invoke(mIndex, target, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    // for methods that return a primitive type; the result is returned as described in Primitives
+    long invokeBits(Obligation target, ObligationBinding.Arguments args) throws InvocationTargetException {
+        try {
+            if (Primitives.isFloatingPoint(mKind))
+                return Double.doubleToRawLongBits(mBinding.invokeDouble(mIndex, target, args));
+            return mBinding.invokeLong(mIndex, target, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Caches the results of a provider method across obligation instances, keyed on its arguments. While a result
+ * is cached, the method isn't called again, and neither are the providers that were only needed to call it.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+    /** how long a result stays valid, in milliseconds; -1 means until it's evicted */
+    public long ttl() default -1;
+    /** how many results (i.e. different sets of arguments) are kept; the least recently used ones are evicted */
+    public int maxEntries() default 16;
+}
@@ -0,0 +1,58 @@
+package de.balpha.obligation;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tells long-running obligation methods that their obligation has been cancelled. Unlike everything else
+ * about an obligation, a token can be used from any thread. Get it through
+ * {@link Obligation#getCancellationToken()}.
+ */
+public final class CancellationToken {
+    private volatile boolean mCancelled = false;
+    private ArrayList<Runnable> mListeners = new ArrayList<Runnable>();
+
+    /* package */ CancellationToken() { }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (mCancelled)
+            throw new CancellationException("Obligation has been cancelled");
+    }
+
+    /**
+     * Runs the given runnable when the obligation is cancelled (or right away, if it already is), e.g. to
+     * abort a network request. It runs on the thread that called {@code cancel()}.
+     */
+    public void onCancel(Runnable listener) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    // for a job that is fulfilled again; only once nothing from the last fulfillment is running
+    synchronized void clearListeners() {
+        if (mListeners != null)
+            mListeners.clear();
+    }
+
+    void cancel() {
+        ArrayList<Runnable> listeners;
+        synchronized (this) {
+            if (mCancelled)
+                return;
+            mCancelled = true;
+            listeners = mListeners;
+            mListeners = null;
+        }
+        for (Runnable listener : listeners)
+            listener.run();
+    }
+}
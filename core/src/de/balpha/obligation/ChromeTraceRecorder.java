@@ -0,0 +1,174 @@
+package de.balpha.obligation;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link ObligationListener} that records what the obligations do, in the trace event format understood by
+ * Chrome's {@code about:tracing} (and other tools like Perfetto). Each run of an obligation method shows up on
+ * the thread it ran on, along with how long it waited to be run; each fulfillment shows up as a whole on the UI
+ * thread, along with the moments the results of async methods arrived there.
+ * <pre>
+ *     ChromeTraceRecorder recorder = new ChromeTraceRecorder();
+ *     Obligation.setDefaultListener(recorder);
+ *     // ... later:
+ *     recorder.writeTo(new FileWriter(file));
+ * </pre>
+ */
+public class ChromeTraceRecorder extends ObligationListener {
+    private final long mOrigin = System.nanoTime();
+
+    // all guarded by this
+    private final ArrayList<String> mEvents = new ArrayList<String>();
+    private final LinkedHashMap<Long, String> mThreadNames = new LinkedHashMap<Long, String>();
+    private final WeakIdentityMap<Obligation, Fulfillment> mFulfillments = new WeakIdentityMap<Obligation, Fulfillment>();
+
+    private static class Fulfillment {
+        long start;
+        long thread;
+        final HashMap<String, Long> ready = new HashMap<String, Long>(); // by method name
+        final HashMap<String, Long> ended = new HashMap<String, Long>(); // by method name, for async ones
+    }
+
+    @Override
+    public synchronized void onFulfill(Obligation obligation, long time) {
+        Fulfillment fulfillment = fulfillment(obligation);
+        fulfillment.start = time;
+        fulfillment.thread = thread(Thread.currentThread());
+    }
+
+    @Override
+    public synchronized void onReady(Obligation obligation, String method, long time) {
+        fulfillment(obligation).ready.put(method, time);
+    }
+
+    @Override
+    public synchronized void onRun(Obligation obligation, String method, Thread thread, long start, long end) {
+        Fulfillment fulfillment = fulfillment(obligation);
+        Long ready = fulfillment.ready.remove(method);
+        fulfillment.ended.put(method, end);
+        String args = ready != null ? "{\"queueWait\":" + micros(start - ready) + "}" : "{}";
+        add("X", method, category(obligation), start, end - start, thread(thread), args);
+    }
+
+    @Override
+    public synchronized void onDelivered(Obligation obligation, String method, long time) {
+        Long ended = fulfillment(obligation).ended.remove(method);
+        String args = ended != null ? "{\"hop\":" + micros(time - ended) + "}" : "{}";
+        add("i", method + " delivered", category(obligation), time, -1, thread(Thread.currentThread()), args);
+    }
+
+    @Override
+    public synchronized void onComplete(Obligation obligation, long time) {
+        Fulfillment fulfillment = mFulfillments.remove(obligation);
+        if (fulfillment != null && fulfillment.start != 0)
+            add("X", category(obligation), "obligation", fulfillment.start, time - fulfillment.start, fulfillment.thread, "{}");
+    }
+
+    @Override
+    public synchronized void onCancel(Obligation obligation, long time) {
+        Fulfillment fulfillment = mFulfillments.remove(obligation);
+        if (fulfillment != null && fulfillment.start != 0)
+            add("X", category(obligation) + " cancelled", "obligation", fulfillment.start, time - fulfillment.start, fulfillment.thread, "{}");
+    }
+
+    /** Forgets everything recorded so far. */
+    public synchronized void clear() {
+        mEvents.clear();
+        mThreadNames.clear();
+        mFulfillments.clear();
+    }
+
+    /** Writes the recorded events as a JSON trace. The writer isn't closed. */
+    public void writeTo(Writer out) throws IOException {
+        String[] events;
+        Map<Long, String> threadNames;
+        synchronized (this) {
+            events = mEvents.toArray(new String[mEvents.size()]);
+            threadNames = new LinkedHashMap<Long, String>(mThreadNames);
+        }
+        out.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write("{\"ph\":\"M\",\"name\":\"thread_name\",\"pid\":1,\"tid\":" + thread.getKey() + ",\"args\":{\"name\":" + quote(thread.getValue()) + "}}");
+        }
+        for (String event : events) {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            out.write(event);
+        }
+        out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+        out.flush();
+    }
+
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e); // can't happen with a StringWriter
+        }
+        return out.toString();
+    }
+
+    private Fulfillment fulfillment(Obligation obligation) {
+        Fulfillment fulfillment = mFulfillments.get(obligation);
+        if (fulfillment == null) {
+            fulfillment = new Fulfillment();
+            mFulfillments.put(obligation, fulfillment);
+        }
+        return fulfillment;
+    }
+
+    private long thread(Thread thread) {
+        long id = thread.getId();
+        if (!mThreadNames.containsKey(id))
+            mThreadNames.put(id, thread.getName());
+        return id;
+    }
+
+    private static String category(Obligation obligation) {
+        return obligation.getClass().getSimpleName();
+    }
+
+    // duration is -1 for instant events
+    private void add(String phase, String name, String category, long time, long duration, long thread, String args) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"ph\":\"").append(phase).append("\",\"name\":").append(quote(name))
+                .append(",\"cat\":").append(quote(category))
+                .append(",\"ts\":").append(micros(time - mOrigin));
+        if (duration >= 0)
+            sb.append(",\"dur\":").append(micros(duration));
+        else
+            sb.append(",\"s\":\"t\"");
+        sb.append(",\"pid\":1,\"tid\":").append(thread).append(",\"args\":").append(args).append("}");
+        mEvents.add(sb.toString());
+    }
+
+    private static String micros(long nanos) {
+        return String.valueOf(nanos / 1000.0);
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,13 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a method that gets each chunk published by the {@link Streaming} provider of the given object id,
+ * on the UI thread, in order. The method takes one parameter, the chunk, and is neither a provider nor a goal.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Consumes {
+    public int value();
+}
@@ -0,0 +1,263 @@
+package de.balpha.obligation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link ObligationListener} that explains, for each fulfillment, what made it take as long as it did. Once an
+ * obligation completes, the recorded times are laid over its dependency graph to find the critical path: the
+ * chain of methods, each waiting for the previous one's result, that ended with the last method to finish.
+ * Making anything else faster wouldn't have helped; how much each other method could have been slowed down
+ * without delaying the obligation is its slack (which only considers the dependencies, not that a slower method
+ * might keep others from getting a pool thread). The report also shows how much of the critical path was spent
+ * waiting for a thread, rather than running.
+ * <pre>
+ *     Obligation.setDefaultListener(new CriticalPathAnalyzer() {
+ *         protected void onReport(Report report) {
+ *             Log.d("Obligation", report.toString());
+ *         }
+ *     });
+ * </pre>
+ */
+public class CriticalPathAnalyzer extends ObligationListener {
+    /** One method on the critical path. All durations are in nanoseconds. */
+    public static class Step {
+        public final String method;
+        public final boolean async;
+        /** the name of the thread the method ran on */
+        public final String thread;
+        /** how long the method waited to be run after its data was there: for the UI thread, or for a pool thread if it's async */
+        public final long queued;
+        public final long ran;
+        /** for async methods, how long it took for the result to get to the UI thread; else 0 */
+        public final long hop;
+
+        private Step(String method, boolean async, String thread, long queued, long ran, long hop) {
+            this.method = method;
+            this.async = async;
+            this.thread = thread;
+            this.queued = queued;
+            this.ran = ran;
+            this.hop = hop;
+        }
+    }
+
+    /** What bounded one fulfillment. All durations are in nanoseconds. */
+    public static class Report {
+        /** the obligation's class */
+        public final Class<? extends Obligation> obligation;
+        /** from the call to {@code fulfill()} to {@code onComplete()} */
+        public final long total;
+        /** in the order in which the methods ran */
+        public final List<Step> criticalPath;
+        /** for the methods that ran but aren't on the critical path, by name */
+        public final Map<String, Long> slack;
+        /** how long the critical path spent waiting for pool threads */
+        public final long poolWait;
+        /** how long the critical path spent waiting for the UI thread, including the hops of async results */
+        public final long mainThreadWait;
+
+        private Report(Class<? extends Obligation> obligation, long total, List<Step> criticalPath, Map<String, Long> slack) {
+            this.obligation = obligation;
+            this.total = total;
+            this.criticalPath = Collections.unmodifiableList(criticalPath);
+            this.slack = Collections.unmodifiableMap(slack);
+            long poolWait = 0;
+            long mainThreadWait = 0;
+            for (Step step : criticalPath) {
+                if (step.async)
+                    poolWait += step.queued;
+                else
+                    mainThreadWait += step.queued;
+                mainThreadWait += step.hop;
+            }
+            this.poolWait = poolWait;
+            this.mainThreadWait = mainThreadWait;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(obligation.getSimpleName()).append(" took ").append(millis(total)).append("\ncritical path:\n");
+            for (Step step : criticalPath) {
+                sb.append("  ").append(step.method).append(": queued ").append(millis(step.queued))
+                        .append(", ran ").append(millis(step.ran)).append(" on ").append(step.thread);
+                if (step.async)
+                    sb.append(", hop to the UI thread ").append(millis(step.hop));
+                sb.append('\n');
+            }
+            sb.append("waiting on the critical path: ").append(millis(poolWait)).append(" for pool threads, ")
+                    .append(millis(mainThreadWait)).append(" for the UI thread\n");
+            if (!slack.isEmpty()) {
+                sb.append("slack:\n");
+                for (Map.Entry<String, Long> entry : slack.entrySet())
+                    sb.append("  ").append(entry.getKey()).append(": ").append(millis(entry.getValue())).append('\n');
+            }
+            return sb.toString();
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.1f ms", nanos / 1e6);
+        }
+    }
+
+    // what happened to one method; the times are System.nanoTime(), or 0 if it didn't happen (yet)
+    private static class Times {
+        long ready;
+        long start;
+        long end;
+        long delivered;
+        String thread;
+
+        long available() {
+            return delivered != 0 ? delivered : end;
+        }
+    }
+
+    private static class Fulfillment {
+        long start;
+        final HashMap<String, Times> times = new HashMap<String, Times>();
+    }
+
+    // guarded by this
+    private final WeakIdentityMap<Obligation, Fulfillment> mFulfillments = new WeakIdentityMap<Obligation, Fulfillment>();
+    private final ArrayList<Report> mReports = new ArrayList<Report>();
+
+    /** Called with each report, on the UI thread. By default, the report is kept for {@link #getReports()}. */
+    protected void onReport(Report report) {
+        synchronized (this) {
+            mReports.add(report);
+        }
+    }
+
+    /** The reports kept so far, oldest first. */
+    public synchronized List<Report> getReports() {
+        return new ArrayList<Report>(mReports);
+    }
+
+    @Override
+    public synchronized void onFulfill(Obligation obligation, long time) {
+        fulfillment(obligation).start = time;
+    }
+
+    @Override
+    public synchronized void onReady(Obligation obligation, String method, long time) {
+        times(obligation, method).ready = time;
+    }
+
+    @Override
+    public synchronized void onRun(Obligation obligation, String method, Thread thread, long start, long end) {
+        Times times = times(obligation, method);
+        times.start = start;
+        times.end = end;
+        times.thread = thread.getName();
+    }
+
+    @Override
+    public synchronized void onDelivered(Obligation obligation, String method, long time) {
+        times(obligation, method).delivered = time;
+    }
+
+    @Override
+    public void onComplete(Obligation obligation, long time) {
+        Fulfillment fulfillment;
+        synchronized (this) {
+            fulfillment = mFulfillments.remove(obligation);
+        }
+        if (fulfillment != null && fulfillment.start != 0)
+            onReport(analyze(Obligation.getInstructionSet(obligation.getClass()), obligation.getClass(), fulfillment, time));
+    }
+
+    @Override
+    public synchronized void onCancel(Obligation obligation, long time) {
+        mFulfillments.remove(obligation);
+    }
+
+    private Fulfillment fulfillment(Obligation obligation) {
+        Fulfillment fulfillment = mFulfillments.get(obligation);
+        if (fulfillment == null) {
+            fulfillment = new Fulfillment();
+            mFulfillments.put(obligation, fulfillment);
+        }
+        return fulfillment;
+    }
+
+    private Times times(Obligation obligation, String method) {
+        HashMap<String, Times> all = fulfillment(obligation).times;
+        Times times = all.get(method);
+        if (times == null) {
+            times = new Times();
+            all.put(method, times);
+        }
+        return times;
+    }
+
+    private static Report analyze(InstructionSet instructionSet, Class<? extends Obligation> cls, Fulfillment fulfillment, long complete) {
+        // the instructions that ran, by index; the others (whose results were given, or cached) took no time
+        Times[] times = new Times[instructionSet.all.length];
+        Instruction last = null;
+        for (Instruction inst : instructionSet.all) {
+            Times t = fulfillment.times.get(inst.name);
+            if (t == null || t.end == 0)
+                continue;
+            times[inst.index] = t;
+            if (last == null || t.available() > times[last.index].available())
+                last = inst;
+        }
+
+        // Walk back from the last method to finish, each time to the needed result that came last, since
+        // that's what the method was waiting for.
+        ArrayList<Step> path = new ArrayList<Step>();
+        boolean[] onPath = new boolean[instructionSet.all.length];
+        for (Instruction inst = last; inst != null; ) {
+            Times t = times[inst.index];
+            onPath[inst.index] = true;
+            long ready = t.ready != 0 ? t.ready : t.start;
+            path.add(new Step(inst.name, inst.async, t.thread, Math.max(0, t.start - ready), t.end - t.start,
+                    t.delivered != 0 ? t.delivered - t.end : 0));
+            Instruction previous = null;
+            for (int dep : inst.needed) {
+                Instruction provider = instructionSet.providers[dep];
+                if (times[provider.index] == null || onPath[provider.index])
+                    continue;
+                if (previous == null || times[provider.index].available() > times[previous.index].available())
+                    previous = provider;
+            }
+            inst = previous;
+        }
+        Collections.reverse(path);
+
+        // The latest each result could have been there without delaying the end: for a method that nothing ran
+        // after, the end itself; otherwise, what its dependents allowed, minus the time they took from being
+        // ready to having their own result. Dependents come after their providers in a topological order,
+        // so going through one backwards handles them first.
+        long[] latest = new long[instructionSet.all.length];
+        for (int i = 0; i < latest.length; i++)
+            latest[i] = complete;
+        int[] order = instructionSet.topologicalOrder();
+        for (int i = order.length - 1; i >= 0; i--) {
+            Instruction inst = instructionSet.all[order[i]];
+            if (times[inst.index] == null || !inst.isProvider())
+                continue;
+            for (Instruction dependent : instructionSet.dependents[inst.result]) {
+                Times t = times[dependent.index];
+                if (t == null)
+                    continue;
+                long ready = t.ready != 0 ? t.ready : t.start;
+                latest[inst.index] = Math.min(latest[inst.index], latest[dependent.index] - (t.available() - ready));
+            }
+        }
+        LinkedHashMap<String, Long> slack = new LinkedHashMap<String, Long>();
+        for (int index : order) {
+            Instruction inst = instructionSet.all[index];
+            if (times[index] != null && !onPath[index])
+                slack.put(inst.name, Math.max(0, latest[inst.index] - times[inst.index].available()));
+        }
+
+        return new Report(cls, complete - fulfillment.start, path, slack);
+    }
+}
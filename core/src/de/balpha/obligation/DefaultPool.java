@@ -0,0 +1,13 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Sets the {@link Pools pool} for all {@code @Async} methods of an obligation class that don't name one
+ * themselves, e.g. {@code @DefaultPool(Pools.VIRTUAL)}.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DefaultPool {
+    public String value();
+}
@@ -0,0 +1,19 @@
+package de.balpha.obligation;
+
+/**
+ * Decides where obligation methods run. There is one "main thread", which runs all non-async obligation
+ * methods and all callbacks ({@code onComplete()}, {@code onException()}), and {@code fulfill()} must be
+ * called on it. Async methods are handed to {@link #runInBackground}.
+ *
+ * On Android, the default is {@code AndroidDispatcher}, whose main thread is the UI thread. Elsewhere,
+ * use an {@link ExecutorDispatcher} and pass it to {@link Obligation#setDefaultDispatcher}.
+ */
+public interface Dispatcher {
+    boolean isMainThread();
+
+    void runOnMainThread(Runnable runnable);
+
+    void runOnMainThreadDelayed(Runnable runnable, long delayMillis);
+
+    void runInBackground(Runnable runnable);
+}
@@ -1,13 +1,12 @@
 package de.balpha.obligation;
 
-import android.os.Looper;
-
 public class ExceptionWrapper {
 
     public final boolean causedSuspension;
     public final Throwable exception;
 
     private final Job mJob;
+    private final int mGeneration; // of the job; if it has been reset since, this wrapper can't resume it
     private final Instruction mInstruction;
     /* package */ boolean mHandled = false;
     private boolean mExpectingRetry = false;
@@ -17,6 +16,7 @@ public class ExceptionWrapper {
 
     /* package */ ExceptionWrapper(Throwable exception, boolean causedSuspension, Job job, Instruction instruction) {
         mJob = job;
+        mGeneration = job.mGeneration;
         mInstruction = instruction;
         this.exception = exception;
         this.causedSuspension = causedSuspension;
@@ -41,6 +41,8 @@ public class ExceptionWrapper {
     }
 
     public void retryAll() {
+        if (mGeneration != mJob.mGeneration)
+            return; // the obligation has been reset
         mJob.resumeFromAll();
     }
 
@@ -50,10 +52,10 @@ public class ExceptionWrapper {
     void retry(boolean callResume) {
         if (!mExpectingRetry)
             throw new RuntimeException("unexpected call to retry()");
-        if (Looper.myLooper() != Looper.getMainLooper())
+        if (!mJob.mDispatcher.isMainThread())
             throw new RuntimeException("retry must be called from the UI thread");
         mExpectingRetry = false;
-        if (callResume) {
+        if (callResume && mGeneration == mJob.mGeneration) {
             mJob.resumeInstruction(mInstruction);
             mJob.resumeFrom(this, true);
         }
@@ -62,7 +64,7 @@ public class ExceptionWrapper {
     public void useResult(Object data) {
         handled();
         if (!mJob.checkType(mInstruction.result, data))
-            throw new RuntimeException("data provided to useResult is of wrong type; expected " + mInstruction.method.getReturnType().getName() + " but got " + data.getClass().getName());
+            throw new RuntimeException("data provided to useResult is of wrong type; expected " + mInstruction.resultType.getName() + " but got " + data.getClass().getName());
         resultProvided = true;
         result = data;
         mJob.resumeFrom(this, false);
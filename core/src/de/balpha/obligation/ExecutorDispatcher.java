@@ -0,0 +1,66 @@
+package de.balpha.obligation;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Dispatcher} for plain Java. The main thread is a single thread owned by this dispatcher;
+ * use {@link #runOnMainThread} to call {@code fulfill()} on it.
+ */
+public class ExecutorDispatcher implements Dispatcher {
+    private final ScheduledExecutorService mMainThread;
+    private final ExecutorService mThreadPool;
+    private volatile Thread mThread;
+
+    public ExecutorDispatcher() {
+        this(Pools.defaultSize());
+    }
+
+    public ExecutorDispatcher(int backgroundThreads) {
+        mMainThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Obligation main");
+                thread.setDaemon(true);
+                mThread = thread;
+                return thread;
+            }
+        });
+        mThreadPool = Executors.newFixedThreadPool(backgroundThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Obligation worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    @Override
+    public void runOnMainThread(Runnable runnable) {
+        mMainThread.execute(runnable);
+    }
+
+    @Override
+    public void runOnMainThreadDelayed(Runnable runnable, long delayMillis) {
+        mMainThread.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void runInBackground(Runnable runnable) {
+        mThreadPool.execute(runnable);
+    }
+
+    public void shutdown() {
+        mMainThread.shutdown();
+        mThreadPool.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package de.balpha.obligation;
+
+// Maps the (positive) object ids used in the code to the internal ones, which are the indices of the code-provided
+// ids in the array given to the constructor, and back. Object ids are usually small numbers, so the map is normally
+// an array indexed by them; if they're too spread out for that, it's an open addressing hash table instead.
+/* package */ final class IdMap {
+    static final int NONE = -1;
+
+    // ids up to this are always kept in an array; above it, only if at least a quarter of the array would be used
+    private static final int DENSE_LIMIT = 64;
+
+    private final int[] mExternal; // keyed on the internal id
+    private final int[] mDense; // keyed on the code-provided id; NONE where there is none. Null if hashed.
+    private final int[] mKeys; // the code-provided ids, 0 for empty slots
+    private final int[] mValues;
+    private final int mMask;
+
+    IdMap(int[] ids) {
+        mExternal = ids;
+        int max = 0;
+        for (int id : ids) {
+            if (id <= 0)
+                throw new IllegalArgumentException("object ids must be positive; found " + id);
+            max = Math.max(max, id);
+        }
+        if (max <= DENSE_LIMIT || max / 4 <= ids.length) {
+            mDense = new int[max + 1];
+            for (int i = 0; i <= max; i++)
+                mDense[i] = NONE;
+            for (int i = 0; i < ids.length; i++)
+                mDense[ids[i]] = i;
+            mKeys = null;
+            mValues = null;
+            mMask = 0;
+        } else {
+            // at most half full, so the probe sequences stay short
+            int capacity = Integer.highestOneBit(ids.length) * 4;
+            mDense = null;
+            mKeys = new int[capacity];
+            mValues = new int[capacity];
+            mMask = capacity - 1;
+            for (int i = 0; i < ids.length; i++) {
+                int slot = slot(ids[i]);
+                while (mKeys[slot] != 0)
+                    slot = (slot + 1) & mMask;
+                mKeys[slot] = ids[i];
+                mValues[slot] = i;
+            }
+        }
+    }
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mMask;
+    }
+
+    // the internal id for a code-provided one, or NONE if nothing provides it
+    int get(int id) {
+        if (mDense != null)
+            return id >= 0 && id < mDense.length ? mDense[id] : NONE;
+        for (int slot = slot(id); mKeys[slot] != 0; slot = (slot + 1) & mMask) {
+            if (mKeys[slot] == id)
+                return mValues[slot];
+        }
+        return NONE;
+    }
+
+    int getExternal(int index) {
+        return mExternal[index];
+    }
+}
@@ -0,0 +1,33 @@
+package de.balpha.obligation;
+
+/* package */ class Instruction {
+    int index; // position in InstructionSet.all
+    int result;
+    int[] needed;
+    int parameterCount; // the first this much of needed are actually parameters of the method
+    String name;
+    Class<?> resultType;
+    char kind; // of resultType, see Primitives; if it's primitive, the result is kept unboxed
+    Class<?> boxType; // what results given as objects have to be an instance of
+    Invoker invoker;
+    BindingInvoker binding; // the same as invoker if it's one, for calls without boxing
+    boolean async;
+    String pool; // for async instructions; "" means the global default (see Pools)
+    boolean goal;
+    long timeout = -1; // in milliseconds, or -1
+    ResultCache cache; // for @Cached providers, else null
+    SharedCalls shared; // for @Shared providers, else null
+    BatchCalls batch; // for @Batched providers, else null
+    RetryPolicy retry; // for @Retry instructions, else null
+    int streamBuffer; // for @Streaming providers, how many chunks may wait for the main thread, else 0
+    volatile long runNanos; // a moving average of how long this took to run, or 0 if it hasn't run yet
+
+    void recordRunTime(long nanos) {
+        long previous = runNanos;
+        runNanos = previous == 0 ? nanos : (previous * 7 + nanos) / 8; // racy, but it's only an estimate anyway
+    }
+
+    public boolean isProvider() {
+        return result >= 0;
+    }
+}
@@ -0,0 +1,51 @@
+package de.balpha.obligation;
+
+// A first-in, first-out queue of instructions in a ring buffer that never grows, so adding and removing doesn't
+// allocate anything. The capacity is the number of instructions, since a job only queues an instruction when
+// it stops waiting, so each one is in the queue at most once.
+/* package */ final class InstructionQueue {
+    private final Instruction[] mItems;
+    private int mHead = 0;
+    private int mSize = 0;
+
+    InstructionQueue(int capacity) {
+        mItems = new Instruction[Math.max(1, capacity)];
+    }
+
+    void add(Instruction inst) {
+        if (mSize == mItems.length)
+            throw new IllegalStateException("instruction queue is full");
+        mItems[slot(mSize)] = inst;
+        mSize++;
+    }
+
+    private int slot(int i) {
+        int slot = mHead + i;
+        return slot >= mItems.length ? slot - mItems.length : slot;
+    }
+
+    // returns null if the queue is empty
+    Instruction poll() {
+        if (mSize == 0)
+            return null;
+        Instruction inst = mItems[mHead];
+        mItems[mHead] = null;
+        mHead = mHead + 1 == mItems.length ? 0 : mHead + 1;
+        mSize--;
+        return inst;
+    }
+
+    // returns whether the instruction was in the queue
+    boolean remove(Instruction inst) {
+        for (int i = 0; i < mSize; i++) {
+            if (mItems[slot(i)] != inst)
+                continue;
+            for (int j = i + 1; j < mSize; j++)
+                mItems[slot(j - 1)] = mItems[slot(j)];
+            mItems[slot(mSize - 1)] = null;
+            mSize--;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,159 @@
+package de.balpha.obligation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/* package */ class InstructionSet {
+    Instruction[] providers; // keyed on the result id
+    Instruction[] goals; // not keyed on anything particular
+    Instruction[] all; // the providers (at the same positions as in providers), then the goals that aren't providers
+    Instruction[][] dependents; // keyed on the result id; the instructions that need this result, once per mention in their @Needs
+    Instruction[] cached; // the @Cached providers
+    boolean hasPrimitives; // whether any provider's result is kept unboxed
+    int maxParameterCount;
+    int asyncCount; // the number of async instructions in all
+    Instruction[][] consumers; // keyed on the result id; the @Consumes methods of @Streaming providers, or null if there are none
+
+    // The order in which ready instructions are run: those at the start of the longest remaining path to a goal
+    // come first, so with a limited number of threads, the critical path doesn't wait for side branches. The
+    // path lengths are in instructions at first, and are then updated from the observed run times every
+    // REPRIORITIZE_INTERVAL jobs; each update is a new Priorities object, so running jobs aren't affected.
+    volatile Priorities order;
+    private final AtomicInteger mJobCount = new AtomicInteger();
+    private static final int REPRIORITIZE_INTERVAL = 32;
+
+    static final class Priorities implements Comparator<Instruction> {
+        final long[] mPriorities; // keyed on Instruction.index
+
+        Priorities(long[] priorities) {
+            mPriorities = priorities;
+        }
+
+        @Override
+        public int compare(Instruction a, Instruction b) {
+            long pa = mPriorities[a.index];
+            long pb = mPriorities[b.index];
+            if (pa != pb)
+                return pa > pb ? -1 : 1;
+            return a.index - b.index;
+        }
+    }
+    IdMap idMap; // between the code-provided object ids and the internal ones
+    // the consumers aren't in all, since they're never scheduled
+    void setConsumers(List<Instruction> consumers, List<Integer> consumed) {
+        if (consumers.isEmpty())
+            return;
+        ArrayList<ArrayList<Instruction>> byResult = new ArrayList<ArrayList<Instruction>>();
+        for (int i = 0; i < providers.length; i++)
+            byResult.add(new ArrayList<Instruction>());
+        for (int i = 0; i < consumers.size(); i++)
+            byResult.get(consumed.get(i)).add(consumers.get(i));
+        this.consumers = new Instruction[providers.length][];
+        for (int i = 0; i < providers.length; i++)
+            this.consumers[i] = byResult.get(i).toArray(new Instruction[byResult.get(i).size()]);
+    }
+
+    Job createJob(Obligation obligation) {
+        countJob();
+        return new Job(this, obligation);
+    }
+
+    // called for each fulfillment, whether its job is new or reset
+    void countJob() {
+        if (mJobCount.incrementAndGet() % REPRIORITIZE_INTERVAL == 0)
+            prioritize(true);
+    }
+
+    // the indexes of all instructions, each after those of the providers it needs
+    int[] topologicalOrder() {
+        int[] pending = new int[all.length];
+        int[] sorted = new int[all.length];
+        int head = 0, tail = 0;
+        for (Instruction inst : all) {
+            pending[inst.index] = inst.needed.length;
+            if (pending[inst.index] == 0)
+                sorted[tail++] = inst.index;
+        }
+        while (head < tail) {
+            Instruction inst = all[sorted[head++]];
+            if (!inst.isProvider())
+                continue;
+            for (Instruction dependent : dependents[inst.result]) {
+                if (--pending[dependent.index] == 0)
+                    sorted[tail++] = dependent.index;
+            }
+        }
+        return sorted; // complete, since there are no cycles
+    }
+
+    // the length of the longest path from each instruction to a goal, counting either one or (if known) the
+    // observed run time in microseconds for each instruction
+    void prioritize(boolean weighted) {
+        // go through a topological order backwards
+        int[] sorted = topologicalOrder();
+        long[] priorities = new long[all.length];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            Instruction inst = all[sorted[i]];
+            long longest = 0;
+            if (inst.isProvider()) {
+                for (Instruction dependent : dependents[inst.result])
+                    longest = Math.max(longest, priorities[dependent.index]);
+            }
+            long cost = weighted && inst.runNanos > 0 ? Math.max(1, inst.runNanos / 1000) : 1;
+            priorities[inst.index] = longest + cost;
+        }
+        order = new Priorities(priorities);
+    }
+
+    // called once providers and goals are complete
+    void link() {
+        ArrayList<Instruction> all = new ArrayList<Instruction>();
+        for (Instruction inst : providers)
+            all.add(inst);
+        for (Instruction inst : goals) {
+            if (!inst.isProvider())
+                all.add(inst);
+        }
+        this.all = new Instruction[all.size()];
+        all.toArray(this.all);
+
+        ArrayList<Instruction> cached = new ArrayList<Instruction>();
+        for (Instruction inst : this.all) {
+            // a goal's kind only decides how it's called, since its result is ignored if it doesn't provide anything
+            inst.kind = Primitives.kind(inst.resultType);
+            inst.boxType = Primitives.boxType(inst.resultType);
+            if (!inst.isProvider())
+                continue;
+            if (inst.cache != null)
+                cached.add(inst);
+            if (inst.kind != Primitives.NONE)
+                hasPrimitives = true;
+        }
+        this.cached = new Instruction[cached.size()];
+        cached.toArray(this.cached);
+
+        int[] counts = new int[providers.length];
+        for (int i = 0; i < this.all.length; i++) {
+            Instruction inst = this.all[i];
+            inst.index = i;
+            maxParameterCount = Math.max(maxParameterCount, inst.parameterCount);
+            if (inst.async)
+                asyncCount++;
+            for (int dep : inst.needed)
+                counts[dep]++;
+        }
+        dependents = new Instruction[providers.length][];
+        for (int i = 0; i < providers.length; i++)
+            dependents[i] = new Instruction[counts[i]];
+        for (int i = this.all.length - 1; i >= 0; i--) { // backwards, so the dependents end up in order
+            Instruction inst = this.all[i];
+            for (int dep : inst.needed)
+                dependents[dep][--counts[dep]] = inst;
+        }
+
+        prioritize(false);
+    }
+
+}
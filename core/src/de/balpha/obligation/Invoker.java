@@ -0,0 +1,14 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Calls an obligation method. Each {@link Instruction} gets its invoker when its class's
+ * {@link InstructionSet} is built, so all per-method setup happens once per class, not once per call.
+ */
+/* package */ interface Invoker {
+    /**
+     * @throws InvocationTargetException wrapping whatever the obligation method threw
+     */
+    Object invoke(Obligation target, Object[] args) throws InvocationTargetException;
+}
@@ -0,0 +1,1274 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+/* package */ class Job implements ObligationBinding.Arguments {
+
+    InstructionSet mInstructionSet;
+    Obligation mObligation;
+    Dispatcher mDispatcher;
+    ObligationListener mListener; // null unless someone is listening, in which case nothing is timed
+    Object[] mResults;
+    long[] mPrimitiveResults; // for the providers whose results are kept unboxed (see Primitives), else null
+    boolean[] mHaveResults;
+
+    boolean[] mInstructionSuspended;
+
+    // the async instructions that have been started and haven't delivered yet, keyed on Instruction.index; an
+    // instruction is only started again once its previous run is over
+    AsyncRun[] mRunningAsync;
+    int mRunningCount = 0;
+
+    CancellationToken mCancellationToken = new CancellationToken();
+
+    // Ready async instructions are started before ready sync ones, most important first (see
+    // InstructionSet.order), since they compete for threads. Sync ones all run on the main thread one after
+    // the other anyway, so they're kept in order of readiness.
+    InstructionQueue mReadyToRun;
+    PriorityQueue<Instruction> mReadyAsync;
+
+    // The instructions that have to run but haven't been queued yet are "waiting". For each of them, mPending
+    // counts the needed results that aren't there yet; when it reaches 0, the instruction is ready. All three
+    // are keyed on Instruction.index.
+    boolean[] mWaiting;
+    int[] mPending;
+    int mWaitingCount = 0;
+
+    LinkedList<ExceptionWrapper> mBlockingExceptions = new LinkedList<ExceptionWrapper>();
+
+    private boolean isReady(Instruction inst) {
+        for (int dep : inst.needed) {
+            if (!mHaveResults[dep])
+                return false;
+        }
+        return true;
+    }
+
+    Job(InstructionSet instructionSet, Obligation obligation) {
+        mInstructionSet = instructionSet;
+        mObligation = obligation;
+
+        mResults = new Object[instructionSet.providers.length];
+        if (instructionSet.hasPrimitives)
+            mPrimitiveResults = new long[instructionSet.providers.length];
+        mHaveResults = new boolean[instructionSet.providers.length];
+        mInstructionSuspended = new boolean[instructionSet.providers.length];
+        mRunningAsync = new AsyncRun[instructionSet.all.length];
+    }
+
+    private boolean isJobSuspended() {
+        return mBlockingExceptions.size() > 0;
+    }
+
+
+
+    void prepare(Dispatcher dispatcher) {
+
+        mDispatcher = dispatcher;
+        InstructionSet instructionSet = mInstructionSet;
+        if (mListener != null)
+            mListener.onFulfill(mObligation, System.nanoTime());
+
+        // big enough for all instructions of each kind, so neither has to grow; a reset job keeps them, unless
+        // the instructions have been prioritized again since
+        if (mReadyToRun == null) {
+            mReadyToRun = new InstructionQueue(instructionSet.all.length - instructionSet.asyncCount);
+            mWaiting = new boolean[instructionSet.all.length];
+            mPending = new int[instructionSet.all.length];
+        }
+        if (mReadyAsync == null || mReadyAsync.comparator() != instructionSet.order)
+            mReadyAsync = new PriorityQueue<Instruction>(Math.max(1, instructionSet.asyncCount), instructionSet.order);
+
+        boolean[] running = adoptPrefetched(); // keyed on the result id; null if nothing was prefetched
+
+        if (instructionSet.cached.length > 0)
+            useCachedResults();
+
+        boolean[] isDependedOn = findNeededProviders();
+
+        for (int i = 0; i < instructionSet.providers.length; i++) {
+            if (isDependedOn[i] && (running == null || !running[i]))
+                startWaiting(instructionSet.providers[i]);
+        }
+        for (Instruction inst : instructionSet.goals) {
+            if (!inst.isProvider() || !isDependedOn[inst.result] && (running == null || !running[inst.result]))
+                startWaiting(inst);
+        }
+
+        for (int i = 0; i < instructionSet.providers.length; i++) {
+            if (isDependedOn[i])
+                queueIfReady(instructionSet.providers[i]);
+        }
+        for (Instruction inst : instructionSet.goals)
+            queueIfReady(inst);
+    }
+
+    private boolean[] mNeeded; // reused by findNeededProviders()
+    private int[] mStack;
+
+    // all providers the goals depend on, directly or indirectly, keyed on the result id
+    private boolean[] findNeededProviders() {
+        InstructionSet instructionSet = mInstructionSet;
+        if (mNeeded == null) {
+            mNeeded = new boolean[instructionSet.providers.length];
+            mStack = new int[instructionSet.providers.length];
+        } else {
+            Arrays.fill(mNeeded, false);
+        }
+        boolean[] isDependedOn = mNeeded;
+        int[] stack = mStack;
+        int stackSize = 0;
+        for (Instruction inst : instructionSet.goals) {
+            for (int dep : inst.needed) {
+                if (!mHaveResults[dep] && !isDependedOn[dep]) {
+                    isDependedOn[dep] = true;
+                    stack[stackSize++] = dep;
+                }
+            }
+        }
+        while (stackSize > 0) {
+            Instruction provider = instructionSet.providers[stack[--stackSize]];
+            for (int dep : provider.needed) {
+                if (!mHaveResults[dep] && !isDependedOn[dep]) {
+                    isDependedOn[dep] = true;
+                    stack[stackSize++] = dep;
+                }
+            }
+        }
+        return isDependedOn;
+    }
+
+    // The async providers started by prefetch(), keyed on the result id; the array, and the prefetch state of
+    // the tasks in it, are guarded by this, since prefetch() can be called on any thread. So are the results,
+    // and findNeededProviders()' arrays, until prepare() has closed prefetching: prefetch() reads them, and
+    // setResultExternal() can write them on the UI thread at the same time.
+    private AsyncRun[] mPrefetched;
+    private boolean mPrefetchClosed = false; // once the job has been prepared or cancelled
+
+    // Starts the async providers that prepare() would make ready right away, i.e. those that are needed and
+    // whose arguments are all there. They run like any other async instruction, except that their results are
+    // kept until prepare() adopts them.
+    void prefetch(Dispatcher dispatcher, ObligationListener listener) {
+        ArrayList<Executor> executors = new ArrayList<Executor>();
+        ArrayList<Runnable> work = new ArrayList<Runnable>();
+        synchronized (this) {
+            if (mPrefetchClosed || mPrefetched != null)
+                return;
+            mPrefetched = new AsyncRun[mInstructionSet.providers.length];
+            mListener = listener;
+            boolean[] isDependedOn = findNeededProviders();
+            for (Instruction inst : mInstructionSet.providers) {
+                if (!inst.async || inst.batch != null || mHaveResults[inst.result] || !(isDependedOn[inst.result] || inst.goal) || !isReady(inst))
+                    continue;
+                Object[] args = collectArguments(inst);
+                if (inst.cache != null && inst.cache.get(ResultCache.key(args)) != ResultCache.MISS)
+                    continue; // prepare() will use that
+                Executor executor;
+                try {
+                    executor = executorFor(inst);
+                } catch (RuntimeException e) {
+                    continue; // fulfill() reports that
+                }
+                if (mListener != null)
+                    mListener.onReady(mObligation, inst.name, System.nanoTime());
+                AsyncRun task = new AsyncRun(inst, args);
+                task.startOn(dispatcher, executor);
+                task.mPrefetch = true;
+                mPrefetched[inst.result] = task;
+                Runnable w = task;
+                if (inst.shared != null)
+                    w = inst.shared.join(task, mObligation, args);
+                if (w != null) {
+                    executors.add(executor);
+                    work.add(w);
+                }
+            }
+        }
+        for (int i = 0; i < work.size(); i++)
+            runInBackground(dispatcher, executors.get(i), work.get(i));
+    }
+
+    // Takes over the prefetched providers: results that are already there count as given, and the ones that
+    // are still running are treated as if the job had started them. Failed ones are simply run again. Returns
+    // which providers are still running.
+    private boolean[] adoptPrefetched() {
+        synchronized (this) {
+            mPrefetchClosed = true;
+            if (mPrefetched == null)
+                return null;
+            boolean[] running = new boolean[mInstructionSet.providers.length];
+            for (AsyncRun task : mPrefetched) {
+                if (task == null)
+                    continue;
+                Instruction inst = task.mInst;
+                if (mHaveResults[inst.result]) {
+                    task.cancel(true); // given by setResult() in the meantime
+                } else if (!task.mPrefetchDone) {
+                    task.mAdopted = true;
+                    addRunning(task);
+                    running[inst.result] = true;
+                    scheduleExpiry(task);
+                } else if (task.mException == null) {
+                    if (inst.cache != null)
+                        inst.cache.put(ResultCache.key(task.mArgs), task.mResult);
+                    setResult(inst.result, task.mResult);
+                }
+            }
+            return running;
+        }
+    }
+
+    // Cached results count as given, just like the ones from setResult(), so the providers that would only be needed
+    // to compute them aren't run. Repeat until nothing changes, because one cached result can be the argument of
+    // another cached provider.
+    private void useCachedResults() {
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (Instruction inst : mInstructionSet.cached) {
+                if (mHaveResults[inst.result] || !haveArguments(inst))
+                    continue;
+                Object cached = inst.cache.get(ResultCache.key(collectArguments(inst)));
+                if (cached != ResultCache.MISS) {
+                    setResult(inst.result, cached);
+                    found = true;
+                }
+            }
+        }
+    }
+
+    private boolean haveArguments(Instruction inst) {
+        for (int j = 0; j < inst.parameterCount; j++) {
+            if (!mHaveResults[inst.needed[j]])
+                return false;
+        }
+        return true;
+    }
+
+    private Object[] collectArguments(Instruction inst) {
+        Object[] args = new Object[inst.parameterCount];
+        for (int j = 0; j < inst.parameterCount; j++) {
+            args[j] = getResult(inst.needed[j]);
+        }
+        return args;
+    }
+
+    // Sync instructions that are called through reflection and aren't cached get their arguments in an array
+    // that is reused for all calls with the same number of parameters. That's safe even if the method fulfills
+    // something else, since Method.invoke() has taken the arguments out before the method runs.
+    private Object[][] mArgumentArrays; // keyed on the parameter count; created on the first such call
+
+    private Object[] reuseArguments(Instruction inst) {
+        if (mArgumentArrays == null) {
+            mArgumentArrays = new Object[mInstructionSet.maxParameterCount + 1][];
+            for (int i = 0; i < mArgumentArrays.length; i++)
+                mArgumentArrays[i] = new Object[i];
+        }
+        Object[] args = mArgumentArrays[inst.parameterCount];
+        for (int j = 0; j < inst.parameterCount; j++)
+            args[j] = getResult(inst.needed[j]);
+        return args;
+    }
+
+    private Object getResult(int id) {
+        char kind = mInstructionSet.providers[id].kind;
+        if (kind != Primitives.NONE)
+            return Primitives.box(kind, mPrimitiveResults[id]);
+        return mResults[id];
+    }
+
+    // Sync instructions from a binding read their arguments right from the results, through these (see
+    // invokeSync()). The binding reads them all before the method is called, so a nested fulfillment on the
+    // main thread can't get in the way.
+    private Instruction mArgumentsOf;
+
+    @Override
+    public Object get(int i) {
+        return getResult(mArgumentsOf.needed[i]);
+    }
+
+    // a parameter of a primitive type only accepts results of exactly that type, so these are always unboxed
+
+    @Override
+    public long getLong(int i) {
+        return mPrimitiveResults[mArgumentsOf.needed[i]];
+    }
+
+    @Override
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(mPrimitiveResults[mArgumentsOf.needed[i]]);
+    }
+
+    private void startWaiting(Instruction inst) {
+        int pending = 0;
+        for (int dep : inst.needed) {
+            if (!mHaveResults[dep])
+                pending++;
+        }
+        mPending[inst.index] = pending;
+        mWaiting[inst.index] = true;
+        mWaitingCount++;
+    }
+
+    // an instruction that was suspended while running has to wait again, but only for being resumed
+    private void waitAgain(Instruction inst) {
+        mWaiting[inst.index] = true;
+        mWaitingCount++;
+    }
+
+    private void queueIfReady(Instruction inst) {
+        if (!mWaiting[inst.index] || mPending[inst.index] > 0 || isInstructionSuspended(inst))
+            return;
+        mWaiting[inst.index] = false;
+        mWaitingCount--;
+        if (mListener != null)
+            mListener.onReady(mObligation, inst.name, System.nanoTime());
+        if (inst.async)
+            mReadyAsync.add(inst);
+        else
+            mReadyToRun.add(inst);
+    }
+
+    // returned by executeInstruction() when the result is in mPrimitiveResult instead
+    private static final Object PRIMITIVE = new Object();
+    private long mPrimitiveResult;
+
+    private Object executeInstruction(Instruction inst) throws InvocationTargetException {
+        if (!inst.async && inst.cache == null) {
+            if (mListener == null)
+                return invokeSync(inst);
+            long start = System.nanoTime();
+            try {
+                return invokeSync(inst);
+            } finally {
+                mListener.onRun(mObligation, inst.name, Thread.currentThread(), start, System.nanoTime());
+            }
+        }
+        Object[] args = collectArguments(inst);
+        if (inst.cache != null) {
+            Object cached = inst.cache.get(ResultCache.key(args));
+            if (cached != ResultCache.MISS) {
+                if (!inst.async)
+                    return cached;
+                setResult(inst.result, cached); // go() only does this for sync instructions
+                return null;
+            }
+        }
+        if (inst.async) {
+            Executor executor;
+            try {
+                executor = executorFor(inst);
+            } catch (RuntimeException e) {
+                // a pool that doesn't exist fails the instruction before anything counts it as running
+                Object result = onException(inst, e);
+                if (!isInstructionSuspended(inst) && inst.result >= 0)
+                    setResult(inst.result, result); // go() only does this for sync instructions
+                return null;
+            }
+            AsyncRun task = new AsyncRun(inst, args);
+            task.startOn(mDispatcher, executor);
+            addRunning(task);
+            scheduleExpiry(task);
+            if (inst.batch != null) {
+                inst.batch.add(this, task);
+                return null;
+            }
+            Runnable work = task;
+            if (inst.shared != null) {
+                work = inst.shared.join(task, mObligation, args);
+                if (work == null)
+                    return null; // the same call is already running for another job
+            } else if (inst.streamBuffer <= 0 && inst.retry == null) {
+                // a streaming provider's dependents wait until its chunks have been consumed, and a method that
+                // may be retried gives its thread back between the attempts
+                chain(task);
+            }
+            runInBackground(mDispatcher, executor, work);
+            return null;
+        } else if (mListener != null) {
+            long start = System.nanoTime();
+            try {
+                return invokeCached(inst, args);
+            } finally {
+                mListener.onRun(mObligation, inst.name, Thread.currentThread(), start, System.nanoTime());
+            }
+        } else {
+            return invokeCached(inst, args);
+        }
+    }
+
+    // without a new argument array, and with a binding, without boxing anything
+    private Object invokeSync(Instruction inst) throws InvocationTargetException {
+        if (inst.binding == null)
+            return inst.invoker.invoke(mObligation, reuseArguments(inst));
+        mArgumentsOf = inst;
+        if (inst.kind == Primitives.NONE)
+            return inst.binding.invoke(mObligation, this);
+        mPrimitiveResult = inst.binding.invokeBits(mObligation, this);
+        return PRIMITIVE;
+    }
+
+    private Object invokeCached(Instruction inst, Object[] args) throws InvocationTargetException {
+        Object result = inst.invoker.invoke(mObligation, args);
+        inst.cache.put(ResultCache.key(args), result);
+        return result;
+    }
+
+    // Claims the async instructions that will be ready once the given task has its result (and, for each one
+    // after the first, the results of those before it), so the worker runs them right away, instead of waiting
+    // for the main thread to get the result and start them. Only plain async instructions in the same pool are
+    // chained; if one in the chain fails, the ones after it are released again (see finishAsync()).
+    private void chain(AsyncRun first) {
+        AsyncRun last = first;
+        while (true) {
+            Instruction next = null;
+            if (last.mInst.isProvider()) {
+                for (Instruction candidate : mInstructionSet.dependents[last.mInst.result]) {
+                    if (isChainable(candidate, first) && (next == null || mInstructionSet.order.compare(candidate, next) < 0))
+                        next = candidate;
+                }
+            }
+            if (next == null)
+                return;
+            mWaiting[next.index] = false;
+            mWaitingCount--;
+            mPending[next.index] = 0; // it gets its inputs from the chain, and resultAvailable() skips it now
+            AsyncRun task = new AsyncRun(next, collectArguments(next)); // the chained results are filled in by the worker
+            addRunning(task);
+            last.mNext = task;
+            last = task;
+        }
+    }
+
+    private boolean isChainable(Instruction inst, AsyncRun chain) {
+        if (!inst.async || !mWaiting[inst.index] || isInstructionSuspended(inst) || inst.cache != null
+                || inst.shared != null || inst.batch != null || inst.streamBuffer > 0 || inst.retry != null
+                || !inst.pool.equals(chain.mInst.pool))
+            return false;
+        for (int dep : inst.needed) {
+            if (!mHaveResults[dep] && !chain.produces(dep))
+                return false;
+        }
+        return true;
+    }
+
+    // the chained tasks after one that didn't deliver a result won't run; they wait for their data again
+    private void releaseChain(AsyncRun task) {
+        for (AsyncRun next = task.mNext; next != null; next = next.mNext) {
+            if (mRunningAsync[next.mInst.index] != next)
+                continue; // already stopped by invalidate()
+            next.cancel(true); // in case the worker started it anyway, before this one timed out
+            mAbandoned = true;
+            removeRunning(next);
+            startWaiting(next.mInst);
+        }
+        task.mNext = null;
+    }
+
+    private void addRunning(AsyncRun task) {
+        mRunningAsync[task.mInst.index] = task;
+        mRunningCount++;
+    }
+
+    private void removeRunning(AsyncRun task) {
+        if (mRunningAsync[task.mInst.index] != task)
+            return;
+        mRunningAsync[task.mInst.index] = null;
+        mRunningCount--;
+    }
+
+    private void scheduleExpiry(final AsyncRun task) {
+        long timeout = timeoutFor(task.mInst);
+        if (timeout >= 0) {
+            mDispatcher.runOnMainThreadDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    expire(task);
+                }
+            }, timeout);
+        }
+    }
+
+    void runInBackground(Instruction inst, Runnable work) {
+        runInBackground(mDispatcher, executorFor(inst), work);
+    }
+
+    // the pool the instruction runs in, or null for the dispatcher's own threads; throws if there's no such pool
+    private static Executor executorFor(Instruction inst) {
+        String pool = inst.pool.length() > 0 ? inst.pool : Pools.getDefault();
+        return pool.length() > 0 ? Pools.get(pool) : null;
+    }
+
+    private static void runInBackground(Dispatcher dispatcher, Executor executor, Runnable work) {
+        if (executor == null)
+            dispatcher.runInBackground(work);
+        else
+            executor.execute(work);
+    }
+
+    private boolean mHasDeadline = false;
+    private long mDeadline; // System.nanoTime()
+
+    void setDeadline(long deadline) {
+        mHasDeadline = true;
+        mDeadline = deadline;
+    }
+
+    // in milliseconds, or -1 if there's no limit
+    private long timeoutFor(Instruction inst) {
+        long timeout = inst.timeout;
+        if (mHasDeadline) {
+            long remaining = Math.max(0, (mDeadline - System.nanoTime()) / 1000000);
+            if (timeout < 0 || remaining < timeout)
+                timeout = remaining;
+        }
+        return timeout;
+    }
+
+    private void expire(AsyncRun task) {
+        if (isCancelled || mRunningAsync[task.mInst.index] != task)
+            return; // finished in time
+        task.cancel(true);
+        mAbandoned = true;
+        finishAsync(task, null, new TimeoutException("Obligation method " + task.mInst.name + " timed out"));
+    }
+
+    private void finishAsync(AsyncRun task, Object result, Throwable exception) {
+        Instruction inst = task.mInst;
+        removeRunning(task);
+        if (task.mNext != null && (exception != null || isInstructionSuspended(inst)))
+            releaseChain(task);
+        if (exception != null) {
+            result = onException(inst, exception);
+        } else if (inst.cache != null) {
+            inst.cache.put(ResultCache.key(task.mArgs), result);
+        }
+        if (isInstructionSuspended(inst)) {
+            waitAgain(inst);
+            return;
+        }
+        if (inst.result >= 0) {
+            setResult(inst.result, result);
+        }
+        go();
+    }
+
+    private static RuntimeException asRuntimeException(Throwable ex) {
+        if (ex instanceof RuntimeException)
+            return (RuntimeException)ex;
+        else
+            return new RuntimeException(ex);
+    }
+
+    private Object onException(Instruction inst, Throwable exception) {
+        if (!inst.isProvider())
+            throw asRuntimeException(exception);
+        boolean causedSuspension = !isJobSuspended();
+        ExceptionWrapper wrapper = new ExceptionWrapper(exception, causedSuspension, this, inst);
+        mBlockingExceptions.add(wrapper);
+        mObligation.onException(wrapper, mInstructionSet.idMap.getExternal(inst.result));
+        if (!wrapper.mHandled) {
+            throw asRuntimeException(exception);
+        }
+        if (wrapper.resultProvided)
+            return wrapper.result;
+        else
+            return null;
+    }
+
+    public void suspendInstruction(Instruction inst) {
+        mInstructionSuspended[inst.result] = true;
+    }
+
+    public void resumeInstruction(Instruction inst) {
+        mInstructionSuspended[inst.result] = false;
+        queueIfReady(inst);
+        go();
+    }
+
+    private boolean isInstructionSuspended(Instruction inst) {
+        return inst.isProvider() && mInstructionSuspended[inst.result];
+    }
+
+    void resumeFromAll() {
+        for (int i = 0; i < mInstructionSuspended.length; i++) {
+            if (mInstructionSuspended[i]) {
+                mInstructionSuspended[i] = false;
+                queueIfReady(mInstructionSet.providers[i]);
+            }
+        }
+
+        while (!mBlockingExceptions.isEmpty()) {
+            ExceptionWrapper e = mBlockingExceptions.pop();
+            e.retry(false);
+        }
+        if (!mIsGoing)
+            go();
+    }
+
+    void resumeFrom(ExceptionWrapper wrapper, boolean goAgain) {
+        mBlockingExceptions.remove(wrapper);
+        if (goAgain && !mIsGoing)
+            go();
+    }
+
+    private boolean mIsGoing = false;
+
+    void go() {
+        if (isCancelled)
+            return;
+        mIsGoing = true;
+        while (!isJobSuspended()) {
+            Instruction inst = mReadyAsync.poll();
+            if (inst == null)
+                inst = mReadyToRun.poll();
+            if (inst == null)
+                break;
+            Object result = null;
+            mExecuting = inst;
+            mExecutingStale = false;
+            try {
+                result = executeInstruction(inst);
+            } catch (InvocationTargetException e) {
+                result = onException(inst, e.getCause());
+            } finally {
+                mExecuting = null;
+            }
+            if (isCancelled) {
+                mIsGoing = false;
+                return;
+            }
+            if (mExecutingStale)
+                continue; // it called update() or invalidate() for data it needs, so it runs again with the new data
+            if (isInstructionSuspended(inst)) {
+                waitAgain(inst);
+            } else if (!inst.async && inst.result >= 0) {
+                if (result == PRIMITIVE)
+                    setPrimitiveResult(inst.result, mPrimitiveResult);
+                else
+                    setResult(inst.result, result);
+            }
+        }
+
+        // note that if the job is suspended at this point, then so is some instruction, and thus it is waiting
+        mIsGoing = false; // onComplete() may reset the obligation and fulfill it again
+        if (mWaitingCount == 0 && mRunningCount == 0) {
+            if (mListener != null)
+                mListener.onComplete(mObligation, System.nanoTime());
+            mObligation.onComplete();
+        }
+    }
+
+    boolean checkType(int id, Object result) {
+        return mInstructionSet.providers[id].boxType.isAssignableFrom(result.getClass());
+    }
+
+    private boolean[] mGiven; // keyed on the result id; which results were given by setResult(), or null if none were
+
+    void setResultExternal(int extId, Object result) {
+        int id = mInstructionSet.idMap.get(extId);
+        if (id == IdMap.NONE)
+            throw new RuntimeException("Obligation object id " + extId + " isn't provided by any method");
+        if (!checkType(id, result))
+            throw new RuntimeException("setResult given wrong type; expected " + mInstructionSet.providers[id].resultType.getName() + " but got " +result.getClass().getName());
+        synchronized (this) { // prefetch() may be reading the results on another thread
+            setResult(id, result);
+            if (mGiven == null)
+                mGiven = new boolean[mInstructionSet.providers.length];
+            mGiven[id] = true;
+        }
+    }
+
+    private boolean[] mStale; // keyed on the result id; reused by invalidate()
+    private Instruction mExecuting; // the instruction go() is running right now, if any
+    private boolean mExecutingStale; // whether invalidate() has affected that instruction meanwhile
+
+    void updateExternal(int extId, Object result) {
+        int id = mInstructionSet.idMap.get(extId);
+        if (id == IdMap.NONE)
+            throw new RuntimeException("Obligation object id " + extId + " isn't provided by any method");
+        if (!checkType(id, result))
+            throw new RuntimeException("update given wrong type; expected " + mInstructionSet.providers[id].resultType.getName() + " but got " +result.getClass().getName());
+        invalidate(id, true, result);
+        if (mGiven == null)
+            mGiven = new boolean[mInstructionSet.providers.length];
+        mGiven[id] = true;
+        if (!mIsGoing)
+            go();
+    }
+
+    void invalidateExternal(int extId) {
+        int id = mInstructionSet.idMap.get(extId);
+        if (id == IdMap.NONE)
+            throw new RuntimeException("Obligation object id " + extId + " isn't provided by any method");
+        invalidate(id, false, null);
+        if (!mIsGoing)
+            go();
+    }
+
+    // Throws away the given result and all results computed from it, directly or indirectly, and makes the
+    // instructions that need them wait again; instructions that were running or queued with the old data are
+    // stopped. The other results are kept, so only what depends on the result runs again. With a replacement,
+    // that becomes the new result; without one, the result's provider runs again, if anything needs it.
+    private void invalidate(int id, boolean replace, Object replacement) {
+        if (isCancelled)
+            return;
+        InstructionSet instructionSet = mInstructionSet;
+        if (mStale == null) {
+            mStale = new boolean[instructionSet.providers.length];
+            if (mStack == null)
+                mStack = new int[instructionSet.providers.length];
+        } else {
+            Arrays.fill(mStale, false);
+        }
+        boolean[] stale = mStale;
+        int[] stack = mStack;
+        int stackSize = 0;
+        stale[id] = true;
+        stack[stackSize++] = id;
+        while (stackSize > 0) {
+            for (Instruction dependent : instructionSet.dependents[stack[--stackSize]]) {
+                if (dependent.isProvider() && !stale[dependent.result]) {
+                    stale[dependent.result] = true;
+                    stack[stackSize++] = dependent.result;
+                }
+            }
+        }
+
+        // stop everything that was going to use the old data
+        for (Instruction inst : instructionSet.all) {
+            if (!isAffected(inst, stale))
+                continue;
+            if (inst == mExecuting)
+                mExecutingStale = true;
+            AsyncRun task = mRunningAsync[inst.index];
+            if (task != null) {
+                task.cancel(true); // what it's doing is of no use anymore
+                removeRunning(task);
+                mAbandoned = true;
+            } else if (mWaiting[inst.index]) {
+                mWaiting[inst.index] = false;
+                mWaitingCount--;
+            } else if (!mReadyToRun.remove(inst)) {
+                mReadyAsync.remove(inst);
+            }
+        }
+        for (int i = 0; i < stale.length; i++) {
+            if (stale[i]) {
+                mResults[i] = null;
+                mHaveResults[i] = false;
+                if (mGiven != null)
+                    mGiven[i] = false;
+            }
+        }
+
+        // then wait for the new data, like prepare() does
+        boolean[] isDependedOn = findNeededProviders();
+        for (Instruction inst : instructionSet.providers) {
+            if (isDependedOn[inst.result] && stale[inst.result] && !(replace && inst.result == id))
+                startWaiting(inst);
+        }
+        for (Instruction inst : instructionSet.goals) {
+            if (isAffected(inst, stale) && (!inst.isProvider() || !isDependedOn[inst.result]) && !(replace && inst.result == id))
+                startWaiting(inst);
+        }
+        if (replace)
+            setResult(id, replacement);
+        for (Instruction inst : instructionSet.all)
+            queueIfReady(inst);
+    }
+
+    // whether the instruction provides or needs one of the given results
+    private static boolean isAffected(Instruction inst, boolean[] stale) {
+        if (inst.isProvider() && stale[inst.result])
+            return true;
+        for (int dep : inst.needed) {
+            if (stale[dep])
+                return true;
+        }
+        return false;
+    }
+
+    // gives the results that were given to this job to another one
+    void copyGivenResults(Job job) {
+        if (mGiven == null)
+            return;
+        for (int id = 0; id < mGiven.length; id++) {
+            if (mGiven[id]) {
+                job.setResult(id, getResult(id));
+                if (job.mGiven == null)
+                    job.mGiven = new boolean[mGiven.length];
+                job.mGiven[id] = true;
+            }
+        }
+    }
+
+    void setResult(int index, Object result) {
+        char kind = mInstructionSet.providers[index].kind;
+        if (kind != Primitives.NONE) {
+            setPrimitiveResult(index, Primitives.toBits(kind, result));
+            return;
+        }
+        if (mHaveResults[index])
+            throw new RuntimeException("Obligation result set multiple times");
+        mResults[index] = result;
+        resultAvailable(index);
+    }
+
+    private void setPrimitiveResult(int index, long bits) {
+        if (mHaveResults[index])
+            throw new RuntimeException("Obligation result set multiple times");
+        mPrimitiveResults[index] = bits;
+        resultAvailable(index);
+    }
+
+    private void resultAvailable(int index) {
+        mHaveResults[index] = true;
+        if (mPending == null)
+            return; // not prepared yet; prepare() will take this result into account
+        for (Instruction dependent : mInstructionSet.dependents[index]) {
+            if (!mWaiting[dependent.index])
+                continue;
+            mPending[dependent.index]--;
+            queueIfReady(dependent);
+        }
+    }
+
+    // the chunks of one run of a @Streaming provider that have been published, but not passed to the consumers yet
+    private static class Stream {
+        int pending; // guarded by this
+    }
+
+    // the task running on the current thread, if any, so publish() knows which run the chunks come from
+    private static final ThreadLocal<AsyncRun> sRunningTask = new ThreadLocal<AsyncRun>();
+
+    // called on the background thread that runs the @Streaming instruction
+    void publish(int extId, final Object chunk) {
+        final int id = mInstructionSet.idMap.get(extId);
+        if (id == IdMap.NONE || mInstructionSet.providers[id].streamBuffer <= 0)
+            throw new RuntimeException("Obligation object id " + extId + " isn't provided by a @Streaming method");
+        final AsyncRun task = sRunningTask.get();
+        if (task == null || task.job() != this || task.mInst.result != id)
+            throw new RuntimeException("publish() must be called from the @Streaming method, which runs in the background");
+        final Stream stream = task.stream();
+        synchronized (stream) {
+            while (stream.pending >= mInstructionSet.providers[id].streamBuffer && !task.isCancelled()) {
+                try {
+                    stream.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            mCancellationToken.throwIfCancelled();
+            if (task.isCancelled())
+                throw new CancellationException("Obligation method has been stopped, since its data was invalidated");
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException("Interrupted while publishing");
+            stream.pending++;
+        }
+        mDispatcher.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                consume(id, task, stream, chunk);
+            }
+        });
+    }
+
+    private void consume(int id, AsyncRun task, Stream stream, Object chunk) {
+        try {
+            // a run that has been stopped, e.g. by invalidate(), may have published before a newer one
+            if (isCancelled || task.isCancelled() || mInstructionSet.consumers == null)
+                return;
+            Object[] args = new Object[] { chunk };
+            for (Instruction consumer : mInstructionSet.consumers[id]) {
+                try {
+                    consumer.invoker.invoke(mObligation, args);
+                } catch (InvocationTargetException e) {
+                    throw asRuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            synchronized (stream) {
+                stream.pending--;
+                stream.notifyAll();
+            }
+        }
+    }
+
+    private boolean isCancelled = false;
+
+    // Whether an async method may still be running although the job doesn't wait for it anymore, because it timed
+    // out or was released from a chain. Such a job can't be reset, since the method could still publish() to it;
+    // neither can a cancelled one, for the same reason.
+    private boolean mAbandoned = false;
+
+    // counts the fulfillments, so an ExceptionWrapper from an earlier one can't resume the job
+    int mGeneration = 0;
+
+    // Makes the job ready to be prepared again, keeping its arrays and queues, and if keepGiven is true, the
+    // results given by setResult(). That's only possible once none of the async methods it started can still
+    // deliver to it, or publish(); if one might, this returns false, and the job should be cancelled and
+    // replaced instead.
+    boolean reset(boolean keepGiven) {
+        if (isCancelled || mAbandoned || mRunningCount > 0 || mIsGoing)
+            return false;
+        synchronized (this) {
+            if (mPrefetched != null) {
+                for (AsyncRun task : mPrefetched) {
+                    if (task != null && !task.mAdopted && !task.mPrefetchDone)
+                        return false;
+                }
+            }
+            mPrefetched = null;
+            mPrefetchClosed = false;
+        }
+        mGeneration++;
+        mInstructionSet.countJob();
+        mCancellationToken.clearListeners();
+        for (int id = 0; id < mResults.length; id++) {
+            if (keepGiven && mGiven != null && mGiven[id])
+                continue;
+            mResults[id] = null;
+            mHaveResults[id] = false;
+            if (mGiven != null)
+                mGiven[id] = false;
+        }
+        Arrays.fill(mInstructionSuspended, false);
+        mBlockingExceptions.clear();
+        if (mReadyToRun != null) {
+            while (mReadyToRun.poll() != null) { }
+            mReadyAsync.clear();
+            Arrays.fill(mWaiting, false);
+            Arrays.fill(mPending, 0);
+        }
+        mWaitingCount = 0;
+        if (mArgumentArrays != null) {
+            for (Object[] args : mArgumentArrays)
+                Arrays.fill(args, null);
+        }
+        mArgumentsOf = null;
+        mHasDeadline = false;
+        mIsGoing = false;
+        return true;
+    }
+
+    // returns the number of async instructions that were stopped, i.e. haven't started or were interrupted
+    public int cancel(boolean interrupt) {
+        if (isCancelled)
+            return 0;
+        isCancelled = true;
+        // cancel the token first, so an interrupted method sees it as cancelled
+        mCancellationToken.cancel();
+        ArrayList<AsyncRun> tasks = new ArrayList<AsyncRun>();
+        for (int i = 0; i < mRunningAsync.length; i++) {
+            if (mRunningAsync[i] != null)
+                tasks.add(mRunningAsync[i]);
+            mRunningAsync[i] = null;
+        }
+        mRunningCount = 0;
+        synchronized (this) {
+            mPrefetchClosed = true;
+            if (mPrefetched != null) {
+                for (AsyncRun task : mPrefetched) {
+                    if (task != null && !task.mAdopted && !task.mPrefetchDone)
+                        tasks.add(task);
+                }
+            }
+        }
+        // mark them all first, so an interrupted one can't free its thread for a queued one that's about to be cancelled
+        for (AsyncRun task : tasks)
+            task.mCancelled = true;
+        int aborted = 0;
+        for (AsyncRun task : tasks) {
+            if (task.cancel(interrupt))
+                aborted++;
+        }
+        if (mListener != null)
+            mListener.onCancel(mObligation, System.nanoTime());
+        return aborted;
+    }
+
+    // The async tasks that have delivered, in order, and whether mDeliverFinished has been posted to hand them
+    // to the job on the main thread; guarded by this. One runnable takes all tasks that finish before it runs,
+    // so an async result doesn't need a runnable of its own.
+    private AsyncRun mFinishedFirst;
+    private AsyncRun mFinishedLast;
+    private boolean mDeliveryPosted = false;
+
+    private final Runnable mDeliverFinished = new Runnable() {
+        @Override
+        public void run() {
+            deliverFinished();
+        }
+    };
+
+    private void deliverFinished() {
+        boolean failed = true;
+        try {
+            AsyncRun task;
+            while ((task = nextFinished()) != null)
+                task.onFinished();
+            failed = false;
+        } finally {
+            if (failed) {
+                // the exception goes to the dispatcher, as it would have from a runnable for this task alone
+                boolean more;
+                synchronized (this) {
+                    more = mFinishedFirst != null;
+                    mDeliveryPosted = more;
+                }
+                if (more)
+                    mDispatcher.runOnMainThread(mDeliverFinished);
+            }
+        }
+    }
+
+    // returns null once there are no more, and from then on, the next delivered task posts mDeliverFinished again
+    private synchronized AsyncRun nextFinished() {
+        AsyncRun task = mFinishedFirst;
+        if (task == null) {
+            mDeliveryPosted = false;
+            return null;
+        }
+        mFinishedFirst = task.mNextFinished;
+        if (mFinishedFirst == null)
+            mFinishedLast = null;
+        task.mNextFinished = null;
+        return task;
+    }
+
+    // work that is done once for tasks from several jobs, i.e. a @Shared or @Batched call
+    /* package */ interface SharedWork {
+        // called when a member task is cancelled; returns whether the work was stopped, which only happens once
+        // no member is interested anymore
+        boolean leave(boolean interrupt);
+
+        // the obligation the method is called on, i.e. that of the job that started the work
+        Obligation target();
+
+        // cancelled once no member is interested anymore, rather than with the target's job
+        CancellationToken token();
+    }
+
+    // the shared work running on the current thread, if any; see sharedToken()
+    private static final ThreadLocal<SharedWork> sRunningShared = new ThreadLocal<SharedWork>();
+
+    // calls the method for shared work, on the thread that does it
+    static Object callShared(SharedWork work, Instruction inst, Object[] args, RetryPolicy.Caller caller, int attempt) throws InvocationTargetException {
+        sRunningShared.set(work);
+        try {
+            return RetryPolicy.call(inst, work.target(), args, caller, attempt);
+        } finally {
+            sRunningShared.remove();
+        }
+    }
+
+    // While a @Shared or @Batched method runs, the token it gets from its obligation is that of the shared work,
+    // since cancelling the one job whose obligation the method happens to be called on doesn't stop the work.
+    // Returns null otherwise.
+    static CancellationToken sharedToken(Obligation obligation) {
+        SharedWork work = sRunningShared.get();
+        return work != null && work.target() == obligation ? work.token() : null;
+    }
+
+    static boolean allCancelled(List<AsyncRun> tasks) {
+        for (AsyncRun task : tasks) {
+            if (!task.isCancelled())
+                return false;
+        }
+        return true;
+    }
+
+    // runs an async instruction on a background thread, then hands the result to the job on the main thread
+    /* package */ class AsyncRun implements Runnable, RetryPolicy.Caller {
+        final Instruction mInst;
+        final Object[] mArgs; // collected on the main thread, so the worker never touches mResults
+        private Object mResult;
+        private InvocationTargetException mException;
+        private volatile boolean mCancelled = false;
+        SharedWork mSharedWork; // for @Shared and @Batched instructions, the call that does the actual work
+        AsyncRun mNext; // the task the worker runs right after this one, if it succeeds (see chain())
+        AsyncRun mNextFinished; // guarded by Job.this; see deliverFinished()
+
+        // for tasks started by prefetch(); guarded by Job.this
+        boolean mPrefetch = false;
+        boolean mPrefetchDone = false;
+        boolean mAdopted = false;
+
+        // guarded by this
+        private boolean mStarted = false;
+        private Thread mThread; // while running
+
+        private volatile Stream mStream; // for a @Streaming instruction, created on the first publish()
+
+        // where the task is run, so another attempt runs there as well; see RetryPolicy
+        private Dispatcher mStartDispatcher;
+        private Executor mStartExecutor;
+        private int mAttempts = 0; // only used by the thread making the attempt
+
+        public AsyncRun(Instruction inst, Object[] args) {
+            mInst = inst;
+            mArgs = args;
+        }
+
+        // returns whether the instruction was stopped
+        synchronized boolean cancel(boolean interrupt) {
+            mCancelled = true;
+            Stream stream = mStream;
+            if (stream != null) {
+                synchronized (stream) {
+                    stream.notifyAll(); // publish() throws now
+                }
+            }
+            if (mSharedWork != null)
+                return mSharedWork.leave(interrupt);
+            if (!mStarted)
+                return true;
+            if (interrupt && mThread != null) {
+                mThread.interrupt();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            if (!runOnce())
+                return;
+            for (AsyncRun next = mNext; next != null; next = next.mNext) {
+                next.takeArguments(this);
+                if (mListener != null && !next.mCancelled)
+                    mListener.onReady(mObligation, next.mInst.name, System.nanoTime());
+                scheduleExpiry(next);
+                if (!next.runOnce())
+                    return;
+            }
+        }
+
+        // returns whether the instruction succeeded
+        private boolean runOnce() {
+            synchronized (this) {
+                if (mCancelled)
+                    return false;
+                mStarted = true;
+                mThread = Thread.currentThread();
+            }
+            Object result = null;
+            InvocationTargetException exception = null;
+            long start = System.nanoTime();
+            sRunningTask.set(this);
+            try {
+                result = RetryPolicy.call(mInst, mObligation, mArgs, this, ++mAttempts);
+                if (result != RetryPolicy.RETRYING)
+                    mInst.recordRunTime(System.nanoTime() - start);
+            } catch (InvocationTargetException e) {
+                exception = e;
+            } finally {
+                sRunningTask.remove();
+                synchronized (this) {
+                    mThread = null;
+                    Thread.interrupted(); // don't leave an interrupt meant for us to the next task on this thread
+                    if (result == RetryPolicy.RETRYING)
+                        mStarted = false; // until the next attempt, cancelling simply stops it
+                }
+            }
+            if (result == RetryPolicy.RETRYING)
+                return false; // it's never chained, see isChainable()
+            reportRun(start, System.nanoTime());
+            deliver(result, exception);
+            return exception == null && !mCancelled;
+        }
+
+        // whether this task, or one chained after it, provides the given result
+        boolean produces(int id) {
+            for (AsyncRun task = this; task != null; task = task.mNext) {
+                if (task.mInst.result == id)
+                    return true;
+            }
+            return false;
+        }
+
+        // fills in the results of the tasks chained before this one, starting at the given one
+        private void takeArguments(AsyncRun first) {
+            for (AsyncRun task = first; task != this; task = task.mNext) {
+                for (int j = 0; j < mArgs.length; j++) {
+                    if (mInst.needed[j] == task.mInst.result)
+                        mArgs[j] = task.mResult;
+                }
+            }
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        Job job() {
+            return Job.this;
+        }
+
+        void startOn(Dispatcher dispatcher, Executor executor) {
+            mStartDispatcher = dispatcher;
+            mStartExecutor = executor;
+        }
+
+        @Override
+        public void retry() {
+            runInBackground(mStartDispatcher, mStartExecutor, this);
+        }
+
+        // only called on the thread running the task
+        Stream stream() {
+            if (mStream == null)
+                mStream = new Stream();
+            return mStream;
+        }
+
+        @Override
+        public boolean isWanted() {
+            return !mCancelled;
+        }
+
+        // called on the thread that did the work, right after it
+        void reportRun(long start, long end) {
+            if (mListener != null && !mCancelled) // a cancelled job's listener has been told about it already
+                mListener.onRun(mObligation, mInst.name, Thread.currentThread(), start, end);
+        }
+
+        // called on the thread that did the work, which for a @Shared or @Batched instruction may have been another job's
+        void deliver(Object result, InvocationTargetException exception) {
+            if (mCancelled)
+                return;
+            mResult = result;
+            mException = exception;
+            synchronized (Job.this) {
+                if (mPrefetch) {
+                    mPrefetchDone = true;
+                    if (!mAdopted)
+                        return; // prepare() will pick up the result
+                }
+                if (mFinishedLast != null)
+                    mFinishedLast.mNextFinished = this;
+                else
+                    mFinishedFirst = this;
+                mFinishedLast = this;
+                if (mDeliveryPosted)
+                    return;
+                mDeliveryPosted = true;
+            }
+            mDispatcher.runOnMainThread(mDeliverFinished);
+        }
+
+        private void onFinished() {
+            if (mCancelled)
+                return; // the job was cancelled, or this timed out
+            if (mListener != null)
+                mListener.onDelivered(mObligation, mInst.name, System.nanoTime());
+            finishAsync(this, mResult, mException != null ? mException.getCause() : null);
+        }
+    }
+}
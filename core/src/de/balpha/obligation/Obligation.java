@@ -0,0 +1,659 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.*;
+import java.util.concurrent.*;
+
+public abstract class Obligation {
+    // the tasks are only ever run once, and reading the result of a finished FutureTask doesn't lock
+    private static ConcurrentHashMap<Class, FutureTask<InstructionSet>> cache = new ConcurrentHashMap<Class, FutureTask<InstructionSet>>();
+
+    private static final String ANDROID_DISPATCHER = "de.balpha.obligation.AndroidDispatcher";
+    private static volatile Dispatcher sDefaultDispatcher;
+    private static volatile ObligationListener sDefaultListener;
+
+    private boolean mStarted = false;
+    private Job mJob;
+    private Dispatcher mDispatcher;
+    private ObligationListener mListener;
+
+
+    private static FutureTask<InstructionSet> getInstructionSetTask(final Class<? extends Obligation> cls) {
+        FutureTask<InstructionSet> task = cache.get(cls);
+        if (task != null)
+            return task;
+        task = new FutureTask<InstructionSet>(new Callable<InstructionSet>() {
+            @Override
+            public InstructionSet call() {
+                ObligationBinding binding = findBinding(cls);
+                InstructionSet is;
+                if (binding != null)
+                    is = buildInstructionSet(binding);
+                else
+                    is = buildInstructionSet(cls);
+                applyDefaultPool(cls, is);
+                return is;
+            }
+        });
+        FutureTask<InstructionSet> existing = cache.putIfAbsent(cls, task);
+        return existing != null ? existing : task;
+    }
+
+    /* package */ static InstructionSet getInstructionSet(Class<? extends Obligation> cls) {
+        FutureTask<InstructionSet> task = getInstructionSetTask(cls);
+        task.run(); // does nothing if the task has already been run, or is currently running on another thread
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw asRuntimeException(e.getCause());
+        }
+    }
+
+    private static RuntimeException asRuntimeException(Throwable ex) {
+        if (ex instanceof RuntimeException)
+            return (RuntimeException)ex;
+        else
+            return new RuntimeException(ex);
+    }
+
+    /**
+     * Builds the instruction sets of the given obligation classes on background threads, so that
+     * fulfilling them later doesn't have to. Returns immediately. If one of the classes is fulfilled
+     * while its instruction set is still being built, fulfill() waits for it instead of building it again.
+     */
+    public static void preload(Class<? extends Obligation>... classes) {
+        int threads = Math.max(1, Math.min(classes.length, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Obligation preload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (Class<? extends Obligation> cls : classes)
+            executor.execute(getInstructionSetTask(cls)); // errors are kept in the task and thrown by fulfill()
+        executor.shutdown();
+    }
+
+    /**
+     * Sets the dispatcher used by all obligations that haven't been given one through {@link #setDispatcher}.
+     * On Android, this defaults to an {@link AndroidDispatcher}; elsewhere, it has to be set before
+     * fulfilling an obligation.
+     */
+    public static void setDefaultDispatcher(Dispatcher dispatcher) {
+        sDefaultDispatcher = dispatcher;
+    }
+
+    /**
+     * Sets the listener that is told about the progress of all obligations that haven't been given one through
+     * {@link #setListener}, or removes it if null. Only affects obligations fulfilled afterwards.
+     */
+    public static void setDefaultListener(ObligationListener listener) {
+        sDefaultListener = listener;
+    }
+
+    private static Dispatcher getDefaultDispatcher() {
+        Dispatcher dispatcher = sDefaultDispatcher;
+        if (dispatcher != null)
+            return dispatcher;
+        synchronized (Obligation.class) {
+            if (sDefaultDispatcher == null)
+                sDefaultDispatcher = createPlatformDispatcher();
+            return sDefaultDispatcher;
+        }
+    }
+
+    // looked up by name, because the core doesn't know about Android
+    private static Dispatcher createPlatformDispatcher() {
+        Class<?> cls;
+        try {
+            cls = Class.forName(ANDROID_DISPATCHER);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("No Dispatcher available; call Obligation.setDefaultDispatcher() first");
+        }
+        try {
+            return (Dispatcher) cls.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String checkObligation(Class<? extends Obligation> cls) {
+        try {
+            buildInstructionSet(cls);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+        return null;
+
+    }
+
+    private static boolean isFreeOfCircularDependencies(List<Instruction> instructions) {
+        LinkedList<Instruction> queue = new LinkedList<Instruction>();
+        HashSet<Integer> fulfilled = new HashSet<Integer>();
+        LinkedList<Instruction> unfulfilled = new LinkedList<Instruction>();
+        for (Instruction inst: instructions) {
+            if (inst.needed.length == 0) {
+                queue.add(inst);
+            } else {
+                unfulfilled.add(inst);
+            }
+        }
+
+        while (queue.size() > 0) {
+            Instruction inst = queue.pop();
+            if (inst.result >= 0)
+                fulfilled.add(inst.result);
+            else
+                continue;
+
+            Iterator<Instruction> it = unfulfilled.iterator();
+            while (it.hasNext()) {
+                Instruction inst2 = it.next();
+                boolean ok = true;
+                for (int param : inst2.needed) {
+                    if (!fulfilled.contains(param)) {
+                        ok = false;
+                        break;
+                    }
+                }
+                if (ok) {
+                    queue.add(inst2);
+                    it.remove();
+                }
+            }
+        }
+        return unfulfilled.size() == 0;
+    }
+
+    // the type of the data a provider method provides; for a @Batched one, that's the type of the list elements
+    private static Class<?> providedType(Method method) {
+        if (method.isAnnotationPresent(Batched.class))
+            return listElementType(method.getGenericReturnType());
+        return method.getReturnType();
+    }
+
+    // the T in List<T>, or Object if it can't be told
+    private static Class<?> listElementType(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            if (args.length == 1) {
+                Type arg = args[0];
+                if (arg instanceof WildcardType)
+                    arg = ((WildcardType) arg).getUpperBounds()[0];
+                if (arg instanceof ParameterizedType)
+                    arg = ((ParameterizedType) arg).getRawType();
+                if (arg instanceof Class)
+                    return (Class<?>) arg;
+            }
+        }
+        return Object.class;
+    }
+
+    // FIXME: handle inheritance?
+    private static InstructionSet buildInstructionSet(Class<? extends Obligation> cls) {
+        ArrayList<Integer> providedIds = new ArrayList<Integer>(); // code-provided; the internal ids are their indices
+        ArrayList<Class<?>> providerTypes = new ArrayList<Class<?>>(); // FIXME: handle generics
+        HashSet<Integer> streamingIds = new HashSet<Integer>();
+        Method[] methods = cls.getDeclaredMethods();
+        for (Method method : methods) {
+            Provides provides = method.getAnnotation(Provides.class);
+            if (provides == null)
+                continue;
+            int val = provides.value();
+            if (val <= 0)
+                throw new RuntimeException("Obligation object ids must be positive; found " + val);
+            if (providedIds.contains(val))
+                throw new RuntimeException("multiple Obligation methods provide object id " + val);
+            providedIds.add(val);
+            providerTypes.add(providedType(method));
+            if (method.isAnnotationPresent(Streaming.class))
+                streamingIds.add(val);
+        }
+        int[] ids = new int[providedIds.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = providedIds.get(i);
+        IdMap idMap = new IdMap(ids);
+        ArrayList<Instruction> providers = new ArrayList<Instruction>();
+        ArrayList<Instruction> goals = new ArrayList<Instruction>();
+        ArrayList<Instruction> all = new ArrayList<Instruction>();
+        ArrayList<Instruction> consumers = new ArrayList<Instruction>();
+        ArrayList<Integer> consumed = new ArrayList<Integer>();
+        for (Method method : methods) {
+            Consumes consumes = method.getAnnotation(Consumes.class);
+            if (consumes != null) {
+                if (method.isAnnotationPresent(Provides.class) || method.isAnnotationPresent(Goal.class) || method.isAnnotationPresent(Needs.class))
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Consumes, so it can't be a provider or a goal, or have @Needs()");
+                if (method.getParameterTypes().length != 1)
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Consumes, so it must take exactly one parameter");
+                if (!streamingIds.contains(consumes.value()))
+                    throw new RuntimeException("Obligation method " + method.getName() + " consumes object id " + consumes.value() + " which isn't provided by a @Streaming method");
+                Instruction inst = new Instruction();
+                inst.name = method.getName();
+                inst.resultType = method.getReturnType();
+                inst.result = -1;
+                inst.needed = new int[0];
+                inst.parameterCount = 1;
+                inst.invoker = new ReflectionInvoker(method);
+                consumers.add(inst);
+                consumed.add(idMap.get(consumes.value()));
+                continue;
+            }
+            Needs needs = method.getAnnotation(Needs.class);
+            Provides provides = method.getAnnotation(Provides.class);
+            boolean isGoal = method.isAnnotationPresent(Goal.class);
+            boolean typeCheckOnly = false;
+            if (provides == null && !isGoal) {
+                if (needs != null)
+                    typeCheckOnly = true; // a method that provides nothing and is not a goal method will never be called by th obligation mechanism
+                else
+                    continue; // not an obligation method
+            }
+            Instruction inst = new Instruction();
+            inst.name = method.getName();
+            inst.resultType = providedType(method);
+            Async async = method.getAnnotation(Async.class);
+            inst.async = async != null;
+            inst.pool = async != null ? async.pool() : null;
+            Timeout timeout = method.getAnnotation(Timeout.class);
+            inst.timeout = timeout != null ? timeout.value() : -1;
+            if (timeout != null && !inst.async)
+                throw new RuntimeException("Obligation method " + method.getName() + " has a @Timeout but isn't @Async");
+            if (timeout != null && timeout.value() <= 0)
+                throw new RuntimeException("Obligation method " + method.getName() + " has a @Timeout that isn't positive");
+            Retry retry = method.getAnnotation(Retry.class);
+            if (retry != null) {
+                if (!inst.async)
+                    throw new RuntimeException("Obligation method " + method.getName() + " has a @Retry but isn't @Async");
+                if (method.isAnnotationPresent(Streaming.class))
+                    throw new RuntimeException("Obligation method " + method.getName() + " can't be @Streaming and also have a @Retry");
+                if (retry.maxAttempts() <= 0 || retry.backoff() < 0 || retry.jitter() < 0 || retry.jitter() > 1)
+                    throw new RuntimeException("Obligation method " + method.getName() + " has invalid @Retry settings");
+                inst.retry = new RetryPolicy(retry.maxAttempts(), retry.backoff(), retry.jitter());
+            }
+            inst.goal = isGoal;
+            if (provides != null)
+                inst.result = idMap.get(provides.value());
+            else
+                inst.result = -1;
+            Cached cached = method.getAnnotation(Cached.class);
+            if (cached != null && provides == null)
+                throw new RuntimeException("Obligation method " + method.getName() + " is @Cached but doesn't provide anything");
+            if (cached != null && cached.maxEntries() <= 0)
+                throw new RuntimeException("Obligation method " + method.getName() + " has a @Cached maxEntries that isn't positive");
+            boolean shared = method.isAnnotationPresent(Shared.class);
+            if (shared && (provides == null || !inst.async))
+                throw new RuntimeException("Obligation method " + method.getName() + " is @Shared but isn't an @Async provider");
+            Streaming streaming = method.getAnnotation(Streaming.class);
+            if (streaming != null) {
+                if (provides == null || !inst.async)
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Streaming but isn't an @Async provider");
+                if (shared || method.isAnnotationPresent(Batched.class))
+                    throw new RuntimeException("Obligation method " + method.getName() + " can't be @Streaming and also @Shared or @Batched");
+                if (streaming.buffer() <= 0)
+                    throw new RuntimeException("Obligation method " + method.getName() + " has a @Streaming buffer that isn't positive");
+                inst.streamBuffer = streaming.buffer();
+            }
+            Batched batched = method.getAnnotation(Batched.class);
+            if (batched != null) {
+                if (provides == null || !inst.async)
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Batched but isn't an @Async provider");
+                if (shared)
+                    throw new RuntimeException("Obligation method " + method.getName() + " can't be both @Shared and @Batched");
+                if (!List.class.isAssignableFrom(method.getReturnType()))
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Batched but doesn't return a List");
+                if (needs == null || needs.value().length != 1 || method.getParameterTypes().length != 1)
+                    throw new RuntimeException("Obligation method " + method.getName() + " is @Batched, so it must need exactly one object id and take a List of them");
+            }
+
+            Class<?>[] params = method.getParameterTypes();
+            if (needs == null && params.length > 0) {
+                throw new RuntimeException("Obligation method " + method.getName() + " has formal parameters but not @Needs()");
+            }
+            if (needs == null) {
+                inst.needed = new int[0];
+            } else {
+                int[] neededIds = needs.value();
+                if (params.length > neededIds.length)
+                    throw new RuntimeException("Obligation method " + method.getName() + " has more parameters than @Needs() arguments");
+                if (typeCheckOnly && params.length < neededIds.length)
+                    throw new RuntimeException("Obligation method " + method.getName() + " has fewer parameters than @Needs() arguments, and is neither a goal nor a provider. This is very likely a mistake.");
+                inst.needed = new int[neededIds.length];
+                inst.parameterCount = params.length;
+                for (int i = 0; i < neededIds.length; i++) {
+                    int needsId = idMap.get(neededIds[i]);
+                    if (needsId == IdMap.NONE)
+                        throw new RuntimeException("Obligation method " + method.getName() + " needs object id " + neededIds[i] + " which isn't provided");
+                    inst.needed[i] = needsId;
+                    if (i < params.length && batched != null) {
+                        Class<?> keyType = listElementType(method.getGenericParameterTypes()[i]);
+                        if (!params[i].isAssignableFrom(List.class) || !keyType.isAssignableFrom(providerTypes.get(needsId)))
+                            throw new RuntimeException("Obligation method " + method.getName() + " parameter " + i + " has type " + params[i].getName() + " but needs a List of object id " + neededIds[i] + " which is " + providerTypes.get(needsId));
+                    } else if (i < params.length) {
+                        if (!params[i].isAssignableFrom(providerTypes.get(needsId)))
+                            throw new RuntimeException("Obligation method " + method.getName() + " parameter " + i + " has type " + params[i].getName() + " but needs object id " + neededIds[i] + " which is " + providerTypes.get(needsId));
+                    }
+                }
+            }
+
+            if (typeCheckOnly)
+                continue;
+
+            if (inst.result >= 0)
+                providers.add(inst);
+            if (inst.goal)
+                goals.add(inst);
+            all.add(inst);
+            inst.invoker = new ReflectionInvoker(method);
+            if (cached != null)
+                inst.cache = new ResultCache(cached.ttl(), cached.maxEntries());
+            if (shared)
+                inst.shared = new SharedCalls();
+            if (batched != null)
+                inst.batch = new BatchCalls(batched.window(), batched.maxSize());
+        }
+
+        InstructionSet result = new InstructionSet();
+        result.providers = new Instruction[providers.size()];
+        for (Instruction p : providers) {
+            result.providers[p.result] = p;
+        }
+        result.goals = new Instruction[goals.size()];
+        goals.toArray(result.goals);
+
+        if (!isFreeOfCircularDependencies(all)) {
+            throw new RuntimeException("Obligation has circular dependencies");
+        }
+        result.idMap = idMap;
+        result.link();
+        result.setConsumers(consumers, consumed);
+
+        return result;
+    }
+
+    private static void applyDefaultPool(Class<? extends Obligation> cls, InstructionSet is) {
+        DefaultPool defaultPool = cls.getAnnotation(DefaultPool.class);
+        if (defaultPool == null)
+            return;
+        for (Instruction inst : is.all) {
+            if (inst.async && inst.pool.length() == 0)
+                inst.pool = defaultPool.value();
+        }
+    }
+
+    private static ObligationBinding findBinding(Class<? extends Obligation> cls) {
+        Class<?> bindingClass;
+        try {
+            bindingClass = Class.forName(cls.getName() + ObligationBinding.SUFFIX, true, cls.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null; // the annotation processor didn't run, or couldn't handle this class
+        }
+        try {
+            return (ObligationBinding) bindingClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the annotation processor has already verified the class, so unlike the reflection-based version, this doesn't check anything
+    private static InstructionSet buildInstructionSet(ObligationBinding binding) {
+        int count = 0;
+        for (ObligationBinding.Declaration d : binding.declarations) {
+            if (d.provides > 0)
+                count++;
+        }
+        int[] ids = new int[count];
+        count = 0;
+        for (ObligationBinding.Declaration d : binding.declarations) {
+            if (d.provides > 0)
+                ids[count++] = d.provides;
+        }
+        IdMap idMap = new IdMap(ids);
+        InstructionSet result = new InstructionSet();
+        result.providers = new Instruction[ids.length];
+        ArrayList<Instruction> goals = new ArrayList<Instruction>();
+        ArrayList<Instruction> consumers = new ArrayList<Instruction>();
+        ArrayList<Integer> consumed = new ArrayList<Integer>();
+        for (int i = 0; i < binding.declarations.size(); i++) {
+            ObligationBinding.Declaration d = binding.declarations.get(i);
+            Instruction inst = new Instruction();
+            inst.name = d.name;
+            inst.resultType = d.resultType;
+            inst.binding = new BindingInvoker(binding, i, d.resultType);
+            inst.invoker = inst.binding;
+            if (d.consumes > 0) {
+                inst.result = -1;
+                inst.needed = new int[0];
+                inst.parameterCount = 1;
+                consumers.add(inst);
+                consumed.add(idMap.get(d.consumes));
+                continue;
+            }
+            inst.async = d.async;
+            inst.pool = d.pool;
+            inst.timeout = d.timeout;
+            if (d.retryAttempts > 0)
+                inst.retry = new RetryPolicy(d.retryAttempts, d.retryBackoff, d.retryJitter);
+            if (d.cached)
+                inst.cache = new ResultCache(d.cacheTtl, d.cacheMaxEntries);
+            if (d.shared)
+                inst.shared = new SharedCalls();
+            if (d.batched)
+                inst.batch = new BatchCalls(d.batchWindow, d.batchMaxSize);
+            inst.streamBuffer = d.streamBuffer;
+            inst.goal = d.goal;
+            inst.parameterCount = d.parameterCount;
+            inst.needed = new int[d.needs.length];
+            for (int j = 0; j < d.needs.length; j++)
+                inst.needed[j] = idMap.get(d.needs[j]);
+            if (d.provides > 0) {
+                inst.result = idMap.get(d.provides);
+                result.providers[inst.result] = inst;
+            } else {
+                inst.result = -1;
+            }
+            if (inst.goal)
+                goals.add(inst);
+        }
+        result.goals = new Instruction[goals.size()];
+        goals.toArray(result.goals);
+        result.idMap = idMap;
+        result.link();
+        result.setConsumers(consumers, consumed);
+        return result;
+    }
+
+    private synchronized void ensureJob() {
+        if (mJob == null) {
+            Class<? extends Obligation> cls = this.getClass();
+            InstructionSet is = getInstructionSet(cls);
+            mJob = is.createJob(this);
+        }
+    }
+
+    protected void setResult(int id, Object data) {
+        if (mStarted)
+            throw new RuntimeException("Obligation cannot be given data externally after fulfillment has started");
+        ensureJob();
+        mJob.setResultExternal(id, data);
+    }
+
+    /**
+     * Replaces the data for the given object id once the obligation is being (or has been) fulfilled, and runs
+     * only the methods that depend on it, directly or indirectly, again; all other results are kept. Those of
+     * them that are still running, or waiting to run, with the old data are stopped, and so is the provider of
+     * the id, if it hasn't finished. {@link #onComplete()} is called again once everything has caught up.
+     * Must be called from the UI thread.
+     */
+    protected void update(int id, Object data) {
+        checkUpdatable();
+        mJob.updateExternal(id, data);
+    }
+
+    /**
+     * Like {@link #update(int, Object)}, but instead of being given new data, the provider of the object id is
+     * called again, e.g. to reload something that is known to have changed.
+     */
+    protected void invalidate(int id) {
+        checkUpdatable();
+        mJob.invalidateExternal(id);
+    }
+
+    private void checkUpdatable() {
+        if (!mStarted)
+            throw new RuntimeException("Obligation can only be updated after fulfillment has started; use setResult() before that");
+        if (!mJob.mDispatcher.isMainThread())
+            throw new RuntimeException("Obligation can only be updated from the UI thread");
+    }
+
+    public void setDispatcher(Dispatcher dispatcher) {
+        if (mStarted)
+            throw new RuntimeException("Obligation cannot be given a dispatcher after fulfillment has started");
+        mDispatcher = dispatcher;
+    }
+
+    public void setListener(ObligationListener listener) {
+        if (mStarted)
+            throw new RuntimeException("Obligation cannot be given a listener after fulfillment has started");
+        mListener = listener;
+    }
+
+    private ObligationListener getListener() {
+        return mListener != null ? mListener : sDefaultListener;
+    }
+
+    public void fulfill() {
+        fulfill(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Like {@link #fulfill()}, but async providers that are still running when the given time is up are
+     * stopped, as if they had run into their {@link Timeout}. Async providers started after that time are
+     * stopped right away.
+     */
+    public void fulfill(long timeout, TimeUnit unit) {
+        Dispatcher dispatcher = mDispatcher != null ? mDispatcher : getDefaultDispatcher();
+        if (!dispatcher.isMainThread())
+            throw new RuntimeException("Obligation.fulfill() must be called from the UI thread");
+        if (mStarted)
+            throw new RuntimeException("Obligation can only be fulfilled once; call reset() first to fulfill it again");
+        mStarted = true;
+        ensureJob();
+        if (timeout >= 0)
+            mJob.setDeadline(System.nanoTime() + unit.toNanos(timeout));
+        mJob.mListener = getListener();
+        mJob.prepare(dispatcher);
+        mJob.go();
+    }
+
+    /**
+     * Starts the async providers whose data is already there, so their work can begin before the obligation
+     * is fulfilled, e.g. as soon as it's clear that a screen is about to be shown. Their results are kept until
+     * {@link #fulfill()} is called, which uses them (or waits for them if they're still running) instead of
+     * calling the providers again; a prefetched provider that failed is simply called again. Can be called from
+     * any thread, but only before {@code fulfill()}, and any data that is given externally should be set first.
+     * Calling it more than once has no further effect.
+     */
+    public void prefetch() {
+        Dispatcher dispatcher = mDispatcher != null ? mDispatcher : getDefaultDispatcher();
+        ensureJob();
+        mJob.prefetch(dispatcher, getListener());
+    }
+
+    /**
+     * Stops the fulfillment: no further obligation methods are called, and {@code onComplete()} won't be
+     * either. Async methods that are already running are allowed to finish, but their results are ignored.
+     */
+    public void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Like {@link #cancel()}, but if {@code interrupt} is true, the threads running async methods are
+     * interrupted. Must be called from the UI thread.
+     * @return the number of async methods that were stopped, either because they hadn't started yet or
+     * because they were interrupted
+     */
+    public int cancel(boolean interrupt) {
+        ensureJob();
+        return mJob.cancel(interrupt);
+    }
+
+    /**
+     * Makes the obligation ready to be fulfilled again, e.g. to refresh what it shows. If it's still being
+     * fulfilled, that is cancelled first. All results are discarded, including the data given externally, so
+     * that can be given again. Must be called from the UI thread.
+     */
+    public void reset() {
+        reset(false);
+    }
+
+    /**
+     * Like {@link #reset()}, but if {@code keepGivenData} is true, the data given externally is kept.
+     * <p>
+     * Unless the fulfillment had to be cancelled, or an async method timed out, the obligation keeps using
+     * everything it allocated for it, so refreshing the same instance doesn't create garbage the way creating a
+     * new one each time does.
+     */
+    public void reset(boolean keepGivenData) {
+        Dispatcher dispatcher = mDispatcher != null ? mDispatcher : getDefaultDispatcher();
+        if (!dispatcher.isMainThread())
+            throw new RuntimeException("Obligation.reset() must be called from the UI thread");
+        if (mJob != null && !mJob.reset(keepGivenData)) {
+            mJob.cancel(false);
+            Job job = mJob.mInstructionSet.createJob(this);
+            if (keepGivenData)
+                mJob.copyGivenResults(job);
+            synchronized (this) {
+                mJob = job;
+            }
+        }
+        mStarted = false;
+    }
+
+    /** Resets the obligation, keeping the data given externally, and fulfills it again. */
+    public void refulfill() {
+        reset(true);
+        fulfill();
+    }
+
+    /**
+     * The token that async methods can check (or pass on to the code they call) to find out whether this
+     * obligation has been cancelled.
+     */
+    protected final CancellationToken getCancellationToken() {
+        CancellationToken shared = Job.sharedToken(this);
+        if (shared != null)
+            return shared;
+        ensureJob();
+        return mJob.mCancellationToken;
+    }
+
+    /**
+     * Called from a {@link Streaming} provider method to hand a chunk of its data to the {@link Consumes} methods
+     * for the given object id. If the UI thread hasn't caught up with the chunks published before, this blocks
+     * until it has. Throws a {@link CancellationException} if the obligation is cancelled meanwhile, or if the
+     * method's data is invalidated, in which case it runs again and the chunks it published before aren't
+     * passed on anymore. Must be called on the thread the method runs on.
+     */
+    protected final void publish(int id, Object chunk) {
+        mJob.publish(id, chunk);
+    }
+
+    protected void onComplete() { }
+
+    protected void onException(ExceptionWrapper problem, int dataId) {
+        // nothing
+    }
+}
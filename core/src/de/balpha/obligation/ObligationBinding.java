@@ -0,0 +1,126 @@
+package de.balpha.obligation;
+
+import java.util.ArrayList;
+
+/**
+ * Base class for the code generated by the Obligation annotation processor. For an obligation class
+ * {@code com.example.Foo}, the processor creates {@code com.example.Foo$$ObligationBinding}, which lists
+ * the obligation methods of {@code Foo} and calls them directly. If such a class exists, it is used
+ * instead of reflection. You never need to use or subclass this yourself.
+ */
+public abstract class ObligationBinding {
+    /* package */ static final String SUFFIX = "$$ObligationBinding";
+
+    /**
+     * Returned by {@link #declare}; the less common properties of an obligation method are set through this.
+     */
+    public static final class Declaration {
+        String name;
+        Class<?> resultType;
+        int provides;
+        int[] needs;
+        int parameterCount;
+        boolean async;
+        String pool;
+        boolean goal;
+        long timeout = -1;
+        boolean cached;
+        long cacheTtl;
+        int cacheMaxEntries;
+        boolean shared;
+        boolean batched;
+        long batchWindow;
+        int batchMaxSize;
+        int retryAttempts; // 0 if the method isn't retried
+        long retryBackoff;
+        double retryJitter;
+        int streamBuffer;
+        int consumes; // the object id, or 0
+
+        private Declaration() { }
+
+        public Declaration timeout(long millis) {
+            timeout = millis;
+            return this;
+        }
+
+        public Declaration retry(int maxAttempts, long backoffMillis, double jitter) {
+            retryAttempts = maxAttempts;
+            retryBackoff = backoffMillis;
+            retryJitter = jitter;
+            return this;
+        }
+
+        public Declaration shared() {
+            shared = true;
+            return this;
+        }
+
+        public Declaration batched(long window, int maxSize) {
+            batched = true;
+            batchWindow = window;
+            batchMaxSize = maxSize;
+            return this;
+        }
+
+        public Declaration streaming(int buffer) {
+            streamBuffer = buffer;
+            return this;
+        }
+
+        public Declaration consumes(int id) {
+            consumes = id;
+            return this;
+        }
+
+        public Declaration cached(long ttlMillis, int maxEntries) {
+            cached = true;
+            cacheTtl = ttlMillis;
+            cacheMaxEntries = maxEntries;
+            return this;
+        }
+    }
+
+    /* package */ final ArrayList<Declaration> declarations = new ArrayList<Declaration>();
+
+    /**
+     * Declares an obligation method. The index passed to {@link #invoke} is the order of declaration.
+     * Pass 0 for {@code provides} if the method isn't a provider, and null for {@code pool} if it isn't async.
+     */
+    protected final Declaration declare(String name, Class<?> resultType, int provides, int[] needs, int parameterCount, boolean async, String pool, boolean goal) {
+        Declaration d = new Declaration();
+        d.name = name;
+        d.resultType = resultType;
+        d.provides = provides;
+        d.needs = needs;
+        d.parameterCount = parameterCount;
+        d.async = async;
+        d.pool = pool;
+        d.goal = goal;
+        declarations.add(d);
+        return d;
+    }
+
+    /**
+     * The arguments of a call. Primitive ones can be read without boxing: integral ones (as well as chars, and
+     * booleans as 0 or 1) through {@link #getLong}, floating point ones through {@link #getDouble}.
+     */
+    public interface Arguments {
+        Object get(int i);
+        long getLong(int i);
+        double getDouble(int i);
+    }
+
+    /** Calls the method with the given index, unless it returns a primitive type. */
+    protected abstract Object invoke(int index, Obligation target, Arguments args) throws Throwable;
+
+    /** Calls the method with the given index, which returns an integral type, a char or a boolean (as 0 or 1). */
+    protected long invokeLong(int index, Obligation target, Arguments args) throws Throwable {
+        throw new IllegalArgumentException("no obligation method with index " + index + " returning an integral type");
+    }
+
+    /** Calls the method with the given index, which returns a float or double. */
+    protected double invokeDouble(int index, Obligation target, Arguments args) throws Throwable {
+        throw new IllegalArgumentException("no obligation method with index " + index + " returning a floating point type");
+    }
+}
@@ -0,0 +1,46 @@
+package de.balpha.obligation;
+
+/**
+ * Gets told what an obligation is doing, e.g. to find out where the time goes; see {@link ChromeTraceRecorder}
+ * for one that records it all. Register one for all obligations with {@link Obligation#setDefaultListener}, or
+ * for a single one with {@link Obligation#setListener}. Without a listener, nothing is measured at all.
+ * <p>
+ * All times are {@link System#nanoTime()} values. Most calls happen on the UI thread, but not all of them:
+ * {@link #onRun} is called on the background thread for async methods, {@link #onReady} on the background
+ * thread for an async method that runs right after another one on the same thread, and on whatever thread
+ * {@code prefetch()} was called from for prefetched providers. Implementations have to be thread-safe.
+ */
+public abstract class ObligationListener {
+    /** Called when {@code fulfill()} starts working on the obligation. */
+    public void onFulfill(Obligation obligation, long time) { }
+
+    /**
+     * Called when all the data an obligation method needs is there, so it's queued to run (which, for a
+     * prefetched provider, is when {@code prefetch()} is called). How long it then waits for the UI thread or
+     * a pool thread is the difference to the start time passed to {@link #onRun}.
+     */
+    public void onReady(Obligation obligation, String method, long time) { }
+
+    /**
+     * Called after an obligation method ran on the given thread. For a {@link Shared} or {@link Batched} call,
+     * this is called for each obligation that got its result. Not called for results taken from a
+     * {@link Cached} provider's cache.
+     */
+    public void onRun(Obligation obligation, String method, Thread thread, long start, long end) { }
+
+    /**
+     * Called on the UI thread when it gets the result of an async method; the difference to the end time
+     * passed to {@link #onRun} is how long the hop to the UI thread took.
+     */
+    public void onDelivered(Obligation obligation, String method, long time) { }
+
+    /** Called right before {@code onComplete()}. */
+    public void onComplete(Obligation obligation, long time) { }
+
+    /**
+     * Called on the UI thread when the obligation is cancelled, which includes resetting it while it's still
+     * being fulfilled. It won't complete then, so this is the place to drop whatever was kept for it. Only an
+     * async method that is just finishing may still be reported afterwards.
+     */
+    public void onCancel(Obligation obligation, long time) { }
+}
@@ -0,0 +1,139 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Named thread pools for async obligation methods, selected through {@code @Async(pool = "...")}, so that
+ * e.g. slow network calls can't take all the threads that CPU-bound methods need. Three pools exist out of
+ * the box and are created when first used: {@link #IO}, {@link #COMPUTE} and {@link #VIRTUAL}. Others can
+ * be added through {@link #register}.
+ *
+ * Async methods that don't name a pool use their class's {@link DefaultPool}, or, if there is none, the
+ * pool set through {@link #setDefault}. If that isn't set either, they run on the dispatcher's own threads.
+ */
+public final class Pools {
+    /** For methods that mostly wait on the network or the disk. Has twice as many threads as there are cores, but at least 4. */
+    public static final String IO = "io";
+    /** For CPU-bound methods. Has one thread per core. */
+    public static final String COMPUTE = "compute";
+    /**
+     * Runs every method on its own virtual thread, so any number of blocking methods can be in flight at
+     * once. Where virtual threads aren't available (they need Java 21), this is the same as {@link #IO}.
+     */
+    public static final String VIRTUAL = "virtual";
+
+    private static volatile String sDefault = "";
+
+    private static final ConcurrentHashMap<String, Executor> sPools = new ConcurrentHashMap<String, Executor>();
+
+    private Pools() { }
+
+    /**
+     * Makes the given executor available as a pool with the given name, replacing any existing pool of that name.
+     * A replaced pool isn't shut down.
+     */
+    public static void register(String name, Executor executor) {
+        sPools.put(name, executor);
+    }
+
+    /**
+     * Registers a new fixed-size pool with the given name.
+     */
+    public static void register(String name, int threads) {
+        register(name, newPool(name, threads));
+    }
+
+    /**
+     * Sets the pool for async methods that don't name one and whose class has no {@link DefaultPool}.
+     * Pass null to go back to using the dispatcher's threads.
+     */
+    public static void setDefault(String name) {
+        sDefault = name != null ? name : "";
+    }
+
+    static String getDefault() {
+        return sDefault;
+    }
+
+    /** Whether {@link #VIRTUAL} runs methods on virtual threads, rather than being the same as {@link #IO}. */
+    public static boolean hasVirtualThreads() {
+        return VirtualThreads.AVAILABLE;
+    }
+
+    // probed once, when first asked
+    private static class VirtualThreads {
+        static final boolean AVAILABLE;
+
+        static {
+            Executor probe = newVirtualThreadExecutor();
+            AVAILABLE = probe != null;
+            if (probe != null)
+                ((ExecutorService) probe).shutdown();
+        }
+    }
+
+    static Executor get(String name) {
+        Executor executor = sPools.get(name);
+        if (executor != null)
+            return executor;
+        if (VIRTUAL.equals(name)) {
+            executor = hasVirtualThreads() ? newVirtualThreadExecutor() : null;
+            if (executor == null)
+                executor = get(IO);
+            Executor existing = sPools.putIfAbsent(name, executor);
+            return existing != null ? existing : executor;
+        }
+        int threads;
+        if (IO.equals(name))
+            threads = Math.max(4, 2 * cores());
+        else if (COMPUTE.equals(name))
+            threads = cores();
+        else
+            throw new RuntimeException("No pool named \"" + name + "\" has been registered");
+        ExecutorService pool = newPool(name, threads);
+        executor = sPools.putIfAbsent(name, pool);
+        if (executor != null) {
+            pool.shutdown(); // another thread was faster
+            return executor;
+        }
+        return pool;
+    }
+
+    // looked up through reflection, because this has to compile for (and run on) platforms without virtual threads
+    private static Executor newVirtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            return null; // Java 19 and 20 have the method, but it throws unless preview features are enabled
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static int cores() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // the size of a dispatcher's own pool, which is used for async methods that don't ask for a particular pool
+    static int defaultSize() {
+        return cores() + 1;
+    }
+
+    static ExecutorService newPool(final String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Obligation " + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package de.balpha.obligation;
+
+// Provider results of primitive types are kept unboxed, as the bits of a long: integral ones (and chars, and
+// booleans as 0 or 1) by value, floating point ones as the raw bits of a double. The kind of a type is the
+// character used for it in JVM type descriptors, or NONE for reference types and void.
+/* package */ final class Primitives {
+    static final char NONE = 0;
+
+    private Primitives() { }
+
+    static char kind(Class<?> type) {
+        if (type == null || !type.isPrimitive() || type == Void.TYPE)
+            return NONE;
+        if (type == Integer.TYPE)
+            return 'I';
+        if (type == Long.TYPE)
+            return 'J';
+        if (type == Double.TYPE)
+            return 'D';
+        if (type == Float.TYPE)
+            return 'F';
+        if (type == Boolean.TYPE)
+            return 'Z';
+        if (type == Short.TYPE)
+            return 'S';
+        if (type == Byte.TYPE)
+            return 'B';
+        return 'C';
+    }
+
+    static boolean isFloatingPoint(char kind) {
+        return kind == 'D' || kind == 'F';
+    }
+
+    // the class that values of the given type are boxed in
+    static Class<?> boxType(Class<?> type) {
+        switch (kind(type)) {
+            case 'I': return Integer.class;
+            case 'J': return Long.class;
+            case 'D': return Double.class;
+            case 'F': return Float.class;
+            case 'Z': return Boolean.class;
+            case 'S': return Short.class;
+            case 'B': return Byte.class;
+            case 'C': return Character.class;
+            default: return type;
+        }
+    }
+
+    static long toBits(char kind, Object boxed) {
+        if (boxed == null)
+            throw new RuntimeException("Obligation result of a primitive type can't be null");
+        if (isFloatingPoint(kind))
+            return Double.doubleToRawLongBits(((Number) boxed).doubleValue());
+        return toLong(boxed);
+    }
+
+    static Object box(char kind, long bits) {
+        switch (kind) {
+            case 'I': return (int) bits;
+            case 'J': return bits;
+            case 'D': return Double.longBitsToDouble(bits);
+            case 'F': return (float) Double.longBitsToDouble(bits);
+            case 'Z': return bits != 0;
+            case 'S': return (short) bits;
+            case 'B': return (byte) bits;
+            case 'C': return (char) bits;
+            default: throw new IllegalArgumentException("not a primitive kind: " + kind);
+        }
+    }
+
+    // a boxed integral value, char or boolean
+    static long toLong(Object boxed) {
+        if (boxed instanceof Boolean)
+            return (Boolean) boxed ? 1 : 0;
+        if (boxed instanceof Character)
+            return (Character) boxed;
+        return ((Number) boxed).longValue();
+    }
+}
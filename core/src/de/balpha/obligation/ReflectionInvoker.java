@@ -0,0 +1,22 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/* package */ class ReflectionInvoker implements Invoker {
+    private final Method mMethod;
+
+    ReflectionInvoker(Method method) {
+        method.setAccessible(true); // also skips the access checks on each call
+        mMethod = method;
+    }
+
+    @Override
+    public Object invoke(Obligation target, Object[] args) throws InvocationTargetException {
+        try {
+            return mMethod.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
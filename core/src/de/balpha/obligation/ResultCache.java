@@ -0,0 +1,54 @@
+package de.balpha.obligation;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// the process-wide cache of a @Cached provider; it lives in the provider's Instruction, which is shared by all
+// instances of the obligation class
+/* package */ class ResultCache {
+    static final Object MISS = new Object();
+
+    private final long mTtlNanos; // or -1
+    private final LinkedHashMap<List<Object>, Entry> mEntries;
+
+    private static class Entry {
+        Object value;
+        long expires; // System.nanoTime()
+    }
+
+    ResultCache(long ttlMillis, final int maxEntries) {
+        mTtlNanos = ttlMillis < 0 ? -1 : ttlMillis * 1000000;
+        mEntries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // the arguments are the first parameterCount needed results, so the key is just those
+    static List<Object> key(Object[] args) {
+        return Arrays.asList(args);
+    }
+
+    // returns MISS if there's no valid entry
+    synchronized Object get(List<Object> key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null)
+            return MISS;
+        if (mTtlNanos >= 0 && entry.expires - System.nanoTime() < 0) {
+            mEntries.remove(key);
+            return MISS;
+        }
+        return entry.value;
+    }
+
+    synchronized void put(List<Object> key, Object value) {
+        Entry entry = new Entry();
+        entry.value = value;
+        entry.expires = mTtlNanos >= 0 ? System.nanoTime() + mTtlNanos : 0;
+        mEntries.put(key, entry);
+    }
+}
@@ -0,0 +1,21 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Calls an {@code @Async} method again if it throws, waiting longer before each new attempt. The background thread
+ * goes back to its pool while waiting, and the next attempt runs in the same pool. Such a method is never run as
+ * part of a chain. Only when the last attempt fails as well is the exception handled as usual, i.e. passed to
+ * {@code onException()}. Retrying stops as soon as the obligation is cancelled, and a {@link Timeout} limits
+ * all attempts together.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Retry {
+    /** how often the method is called at most, including the first call */
+    public int maxAttempts() default 3;
+    /** how long to wait before the second attempt, in milliseconds; each further wait is twice as long */
+    public long backoff() default 100;
+    /** by how much (as a fraction, between 0 and 1) each wait is randomly made longer or shorter */
+    public double jitter() default 0;
+}
@@ -0,0 +1,77 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// The @Retry settings of an async instruction. The attempts are made on worker threads, so the main thread only
+// hears about the final outcome. Between them, the worker goes back to its pool, rather than holding on to it
+// for the backoff; a single scheduler thread hands the next attempt to the pool once it's due.
+/* package */ class RetryPolicy {
+    // whoever runs the instruction: a single job's task, or a @Shared or @Batched call
+    interface Caller {
+        // whether the result is still of interest to anyone
+        boolean isWanted();
+
+        // makes the next attempt, which has to run in the instruction's pool; called on the scheduler thread
+        void retry();
+    }
+
+    // returned by call() when another attempt has been scheduled, so the caller has nothing to deliver yet
+    static final Object RETRYING = new Object();
+
+    // created when first needed
+    private static class Scheduler {
+        static final ScheduledExecutorService INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Obligation retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final int mMaxAttempts;
+    private final long mBackoff;
+    private final double mJitter;
+
+    RetryPolicy(int maxAttempts, long backoffMillis, double jitter) {
+        mMaxAttempts = maxAttempts;
+        mBackoff = backoffMillis;
+        mJitter = jitter;
+    }
+
+    // the wait before the given attempt (1 being the first retry), in milliseconds
+    long delay(int retry) {
+        long delay = mBackoff << Math.min(retry - 1, 30);
+        if (mJitter > 0)
+            delay = Math.round(delay * (1 + mJitter * (2 * Math.random() - 1)));
+        return delay;
+    }
+
+    // Makes the given attempt (1 being the first) at calling an async instruction. If it fails, and the policy
+    // allows another one that the caller still wants, that is scheduled after the backoff and RETRYING is
+    // returned; otherwise, the exception is thrown. Cancelling the instruction (or it timing out) stops the
+    // retrying, since the caller doesn't want the result anymore then.
+    static Object call(Instruction inst, Obligation target, Object[] args, final Caller caller, int attempt) throws InvocationTargetException {
+        if (inst.retry == null)
+            return inst.invoker.invoke(target, args);
+        try {
+            return inst.invoker.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (attempt >= inst.retry.mMaxAttempts || !caller.isWanted())
+                throw e;
+            Scheduler.INSTANCE.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (caller.isWanted())
+                        caller.retry();
+                }
+            }, inst.retry.delay(attempt), TimeUnit.MILLISECONDS);
+            return RETRYING;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Lets concurrent calls of an {@code @Async} provider method share their work, across obligation instances: if
+ * the method is already running with the same arguments (compared with {@code equals()}) for another instance,
+ * it isn't called again, and the running call's result is used for both.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Shared {
+}
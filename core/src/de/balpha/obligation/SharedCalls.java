@@ -0,0 +1,134 @@
+package de.balpha.obligation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// the in-flight calls of a @Shared provider, keyed on their arguments; like a ResultCache, this lives in the
+// provider's Instruction and is thus shared by all instances of the obligation class
+/* package */ class SharedCalls {
+    private final HashMap<List<Object>, Flight> mFlights = new HashMap<List<Object>, Flight>();
+
+    // Adds the task to the flight for its arguments. If there isn't one yet, a new one is created and returned,
+    // and the caller has to run it; otherwise this returns null.
+    synchronized Flight join(Job.AsyncRun task, Obligation target, Object[] args) {
+        List<Object> key = ResultCache.key(args);
+        Flight flight = mFlights.get(key);
+        boolean isNew = flight == null;
+        if (isNew) {
+            flight = new Flight(key, task.job(), task.mInst, target, args);
+            mFlights.put(key, flight);
+        }
+        flight.mMembers.add(task);
+        task.mSharedWork = flight;
+        return isNew ? flight : null;
+    }
+
+    // one actual call of the method, whose result goes to all member tasks that are still interested
+    /* package */ class Flight implements Runnable, Job.SharedWork, RetryPolicy.Caller {
+        private final List<Object> mKey;
+        private final Job mJob; // the job that started the call, whose dispatcher it runs on
+        private final Instruction mInst;
+        private final Obligation mTarget; // the instance that started the call
+        private final Object[] mArgs;
+        private final CancellationToken mToken = new CancellationToken();
+
+        // guarded by SharedCalls.this
+        private final ArrayList<Job.AsyncRun> mMembers = new ArrayList<Job.AsyncRun>(2);
+        private boolean mStarted = false;
+        private boolean mAbandoned = false;
+        private Thread mThread; // while running
+        private int mAttempts = 0; // only used by the thread making the attempt
+
+        private Flight(List<Object> key, Job job, Instruction inst, Obligation target, Object[] args) {
+            mKey = key;
+            mJob = job;
+            mInst = inst;
+            mTarget = target;
+            mArgs = args;
+        }
+
+        @Override
+        public boolean leave(boolean interrupt) {
+            synchronized (SharedCalls.this) {
+                if (!Job.allCancelled(mMembers))
+                    return false;
+                if (mFlights.get(mKey) == this)
+                    mFlights.remove(mKey); // later calls shouldn't join a call that's being stopped
+            }
+            // nobody can join anymore; cancel the token first, so an interrupted method sees it as cancelled
+            mToken.cancel();
+            synchronized (SharedCalls.this) {
+                if (!mStarted) {
+                    mAbandoned = true;
+                    return true;
+                }
+                if (interrupt && mThread != null) {
+                    mThread.interrupt();
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public Obligation target() {
+            return mTarget;
+        }
+
+        @Override
+        public CancellationToken token() {
+            return mToken;
+        }
+
+        @Override
+        public boolean isWanted() {
+            synchronized (SharedCalls.this) {
+                return !Job.allCancelled(mMembers);
+            }
+        }
+
+        @Override
+        public void retry() {
+            mJob.runInBackground(mInst, this);
+        }
+
+        @Override
+        public void run() {
+            synchronized (SharedCalls.this) {
+                if (mAbandoned)
+                    return;
+                mStarted = true;
+                mThread = Thread.currentThread();
+            }
+            Object result = null;
+            InvocationTargetException exception = null;
+            long start = System.nanoTime();
+            try {
+                result = Job.callShared(this, mInst, mArgs, this, ++mAttempts);
+                if (result != RetryPolicy.RETRYING)
+                    mInst.recordRunTime(System.nanoTime() - start);
+            } catch (InvocationTargetException e) {
+                exception = e;
+            }
+            Job.AsyncRun[] members;
+            synchronized (SharedCalls.this) {
+                mThread = null;
+                Thread.interrupted(); // don't leave an interrupt meant for us to the next task on this thread
+                if (result == RetryPolicy.RETRYING) {
+                    mStarted = false; // until the next attempt, which other calls can still join
+                    return;
+                }
+                if (mFlights.get(mKey) == this)
+                    mFlights.remove(mKey);
+                members = mMembers.toArray(new Job.AsyncRun[mMembers.size()]);
+            }
+            long end = System.nanoTime();
+            for (Job.AsyncRun member : members)
+                member.reportRun(start, end);
+            for (Job.AsyncRun member : members)
+                member.deliver(result, exception);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks an {@code @Async} provider method that hands out its data in chunks while it runs, by calling
+ * {@link Obligation#publish(int, Object)}. Each chunk is passed to the {@link Consumes} methods for the object
+ * id on the UI thread. The method still returns the complete data, for the methods that {@code @Needs} it.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Streaming {
+    /** how many published chunks may wait for the UI thread; once that many do, {@code publish()} blocks */
+    public int buffer() default 4;
+}
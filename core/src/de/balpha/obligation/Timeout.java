@@ -0,0 +1,14 @@
+package de.balpha.obligation;
+
+import java.lang.annotation.*;
+
+/**
+ * Limits how long an {@code @Async} provider may take, in milliseconds. If it takes longer, its thread is
+ * interrupted, and {@code onException()} is called with a {@link java.util.concurrent.TimeoutException},
+ * just as if the provider had thrown it.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+    public long value();
+}
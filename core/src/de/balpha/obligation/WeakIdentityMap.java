@@ -0,0 +1,64 @@
+package de.balpha.obligation;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+// A map that compares its keys by identity and only references them weakly, so a listener that keeps something
+// for each obligation doesn't keep the obligations that are dropped without completing or being cancelled, e.g.
+// because a method failed, or they were only prefetched. Not thread-safe.
+/* package */ final class WeakIdentityMap<K, V> {
+    private final HashMap<Key<K>, V> mMap = new HashMap<Key<K>, V>();
+    private final ReferenceQueue<K> mCollected = new ReferenceQueue<K>();
+
+    private static final class Key<K> extends WeakReference<K> {
+        private final int mHash;
+
+        Key(K referent, ReferenceQueue<K> queue) {
+            super(referent, queue);
+            mHash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this)
+                return true; // also finds a key whose referent is gone
+            if (!(o instanceof Key))
+                return false;
+            Object referent = get();
+            return referent != null && referent == ((Key<?>) o).get();
+        }
+    }
+
+    V get(K key) {
+        purge();
+        return mMap.get(new Key<K>(key, null));
+    }
+
+    void put(K key, V value) {
+        purge();
+        mMap.put(new Key<K>(key, mCollected), value);
+    }
+
+    V remove(K key) {
+        purge();
+        return mMap.remove(new Key<K>(key, null));
+    }
+
+    void clear() {
+        mMap.clear();
+        while (mCollected.poll() != null) { }
+    }
+
+    private void purge() {
+        Reference<? extends K> key;
+        while ((key = mCollected.poll()) != null)
+            mMap.remove(key);
+    }
+}
@@ -0,0 +1,95 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class AllocationTest extends JvmTestCase {
+    static final String VALUE = "value";
+
+    // Measures what the main thread allocates from the start of the first method to the goal, i.e. while
+    // passing the results along the chain. The methods themselves allocate nothing.
+    public static class ChainObligation extends Obligation {
+        static com.sun.management.ThreadMXBean sThreads;
+        long allocated;
+
+        @Provides(1)
+        String first() {
+            allocated = -sThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            return VALUE;
+        }
+
+        @Provides(2) @Needs(1) Object step2(String x) { return x; }
+        @Provides(3) @Needs(2) Object step3(Object x) { return x; }
+        @Provides(4) @Needs({3, 1}) Object step4(Object x, String y) { return x; }
+        @Provides(5) @Needs(4) Object step5(Object x) { return x; }
+        @Provides(6) @Needs({5, 2}) Object step6(Object x, Object y) { return x; }
+        @Provides(7) @Needs(6) Object step7(Object x) { return x; }
+        @Provides(8) @Needs(7) Object step8(Object x) { return x; }
+        @Provides(9) @Needs(8) Object step9(Object x) { return x; }
+        @Provides(10) @Needs({9, 3}) Object step10(Object x, Object y) { return x; }
+        @Provides(11) @Needs(10) Object step11(Object x) { return x; }
+        @Provides(12) @Needs(11) Object step12(Object x) { return x; }
+
+        @Needs({12, 1})
+        @Goal
+        void done(Object x, String y) {
+            allocated += sThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    private static boolean canMeasure() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled())
+            return false;
+        ChainObligation.sThreads = (com.sun.management.ThreadMXBean) threads;
+        return true;
+    }
+
+    public void testDispatchDoesNotAllocate() throws Throwable {
+        if (!canMeasure())
+            return;
+
+        final long[] least = { Long.MAX_VALUE };
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                // enough times for the reflective calls to be compiled, then take the best of the rest
+                for (int i = 0; i < 200; i++) {
+                    ChainObligation o = new ChainObligation();
+                    o.fulfill();
+                    if (i >= 100)
+                        least[0] = Math.min(least[0], o.allocated);
+                }
+            }
+        });
+
+        // measuring itself allocates nothing, so this is what the 11 steps between the first method and the goal took
+        assertEquals(0, least[0]);
+    }
+
+    public void testRefulfillDoesNotAllocate() throws Throwable {
+        if (!canMeasure())
+            return;
+
+        final long[] least = { Long.MAX_VALUE };
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                long thread = Thread.currentThread().getId();
+                ChainObligation o = new ChainObligation();
+                o.fulfill();
+                for (int i = 0; i < 200; i++) {
+                    long before = ChainObligation.sThreads.getThreadAllocatedBytes(thread);
+                    o.refulfill();
+                    if (i >= 100)
+                        least[0] = Math.min(least[0], ChainObligation.sThreads.getThreadAllocatedBytes(thread) - before);
+                }
+            }
+        });
+
+        // all of the job is reused
+        assertEquals(0, least[0]);
+    }
+}
@@ -0,0 +1,244 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchedTest extends JvmTestCase {
+    static List<List<String>> sBatches;
+    static AtomicInteger sStopped;
+    static CountDownLatch sRelease;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sBatches = Collections.synchronizedList(new ArrayList<List<String>>());
+        sStopped = new AtomicInteger();
+        sRelease = new CountDownLatch(1);
+    }
+
+    static List<String> profiles(List<String> users) {
+        sBatches.add(new ArrayList<String>(users));
+        ArrayList<String> result = new ArrayList<String>();
+        for (String user : users)
+            result.add("profile of " + user);
+        return result;
+    }
+
+    // obligation methods aren't inherited, so each of these is complete
+    public static class TickObligation extends Obligation {
+        String user;
+        String profile;
+
+        TickObligation(String user) {
+            this.user = user;
+        }
+
+        @Provides(1)
+        String user() {
+            return user;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Batched
+        List<String> profiles(List<String> users) {
+            return BatchedTest.profiles(users);
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String profile) {
+            this.profile = profile;
+        }
+    }
+
+    public static class WindowObligation extends Obligation {
+        String user;
+        String profile;
+
+        WindowObligation(String user) {
+            this.user = user;
+        }
+
+        @Provides(1)
+        String user() {
+            return user;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Batched(window = 100)
+        List<String> profiles(List<String> users) {
+            return BatchedTest.profiles(users);
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String profile) {
+            this.profile = profile;
+        }
+    }
+
+    public static class LimitedObligation extends Obligation {
+        String user;
+        String profile;
+
+        LimitedObligation(String user) {
+            this.user = user;
+        }
+
+        @Provides(1)
+        String user() {
+            return user;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Batched(maxSize = 2)
+        List<String> profiles(List<String> users) {
+            return BatchedTest.profiles(users);
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String profile) {
+            this.profile = profile;
+        }
+    }
+
+    // doesn't block, but checks its token until it's released
+    public static class PollingObligation extends Obligation {
+        String user;
+        String profile;
+
+        PollingObligation(String user) {
+            this.user = user;
+        }
+
+        @Provides(1)
+        String user() {
+            return user;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Batched
+        List<String> profiles(List<String> users) throws InterruptedException {
+            CancellationToken token = getCancellationToken();
+            while (sRelease.getCount() > 0) {
+                if (token.isCancelled()) {
+                    sStopped.incrementAndGet();
+                    return null;
+                }
+                Thread.sleep(10);
+            }
+            return BatchedTest.profiles(users);
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String profile) {
+            this.profile = profile;
+        }
+    }
+
+    private void fulfill(final Obligation... obligations) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                for (Obligation o : obligations)
+                    o.fulfill();
+            }
+        });
+    }
+
+    public void testOneTick() throws Throwable {
+        TickObligation alice = new TickObligation("alice");
+        TickObligation bob = new TickObligation("bob");
+        TickObligation alice2 = new TickObligation("alice");
+        fulfill(alice, bob, alice2);
+        sleep(100);
+        assertEquals(1, sBatches.size());
+        assertEquals(2, sBatches.get(0).size()); // alice only once
+        assertEquals("profile of alice", alice.profile);
+        assertEquals("profile of bob", bob.profile);
+        assertEquals("profile of alice", alice2.profile);
+
+        // a separate tick is a separate batch
+        TickObligation carol = new TickObligation("carol");
+        fulfill(carol);
+        sleep(100);
+        assertEquals(2, sBatches.size());
+        assertEquals("profile of carol", carol.profile);
+    }
+
+    public void testWindow() throws Throwable {
+        WindowObligation alice = new WindowObligation("alice");
+        WindowObligation bob = new WindowObligation("bob");
+        fulfill(alice);
+        fulfill(bob);
+        assertNull(alice.profile);
+        sleep(200);
+        assertEquals(1, sBatches.size());
+        assertEquals("profile of alice", alice.profile);
+        assertEquals("profile of bob", bob.profile);
+    }
+
+    public void testMaxSize() throws Throwable {
+        LimitedObligation alice = new LimitedObligation("alice");
+        LimitedObligation bob = new LimitedObligation("bob");
+        LimitedObligation carol = new LimitedObligation("carol");
+        fulfill(alice, bob, carol);
+        sleep(100);
+        assertEquals(2, sBatches.size());
+        assertEquals("profile of alice", alice.profile);
+        assertEquals("profile of bob", bob.profile);
+        assertEquals("profile of carol", carol.profile);
+    }
+
+    private void cancel(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.cancel(false);
+            }
+        });
+    }
+
+    public void testToken() throws Throwable {
+        PollingObligation alice = new PollingObligation("alice");
+        PollingObligation bob = new PollingObligation("bob");
+        fulfill(alice, bob);
+        sleep(100);
+
+        // the method runs on alice's obligation, but its token is the batch's, so it keeps going for bob
+        cancel(alice);
+        sleep(100);
+        assertEquals(0, sStopped.get());
+        sRelease.countDown();
+        sleep(100);
+        assertNull(alice.profile);
+        assertEquals("profile of bob", bob.profile);
+    }
+
+    public void testTokenCancelledWithAll() throws Throwable {
+        PollingObligation alice = new PollingObligation("alice");
+        PollingObligation bob = new PollingObligation("bob");
+        fulfill(alice, bob);
+        sleep(100);
+        cancel(alice);
+        cancel(bob);
+        sleep(100);
+        assertEquals(1, sStopped.get());
+        assertEquals(0, sBatches.size());
+    }
+}
@@ -0,0 +1,137 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CachedTest extends JvmTestCase {
+    // the cache is process-wide, so the counters have to be as well
+    static final AtomicInteger sCityCalls = new AtomicInteger();
+    static final AtomicInteger sTokenCalls = new AtomicInteger();
+    static final AtomicInteger sProfileCalls = new AtomicInteger();
+    static final AtomicInteger sWeatherCalls = new AtomicInteger();
+
+    public static class CityObligation extends Obligation {
+        String city;
+
+        @Provides(1)
+        @Cached
+        @Async
+        String city() {
+            sCityCalls.incrementAndGet();
+            return "Berlin";
+        }
+
+        @Needs(1)
+        @Goal
+        void show(String city) {
+            this.city = city;
+        }
+    }
+
+    public static class ProfileObligation extends Obligation {
+        static final int USER = 1;
+        static final int TOKEN = 2;
+        static final int PROFILE = 3;
+
+        String profile;
+
+        @Needs(USER)
+        public void setUser(String user) {
+            setResult(USER, user);
+        }
+
+        @Provides(USER)
+        String user() {
+            return "nobody";
+        }
+
+        @Provides(TOKEN)
+        String token() {
+            sTokenCalls.incrementAndGet();
+            return "secret";
+        }
+
+        // the token is needed to get the profile, but it doesn't change the result, so it isn't part of the key
+        @Provides(PROFILE)
+        @Needs({USER, TOKEN})
+        @Cached(maxEntries = 1)
+        String profile(String user) {
+            sProfileCalls.incrementAndGet();
+            return "profile of " + user;
+        }
+
+        @Needs(PROFILE)
+        @Goal
+        void show(String profile) {
+            this.profile = profile;
+        }
+    }
+
+    public static class WeatherObligation extends Obligation {
+        @Provides(1)
+        @Cached(ttl = 50)
+        int temperature() {
+            return sWeatherCalls.incrementAndGet();
+        }
+
+        @Needs(1)
+        @Goal
+        void show(int temperature) { }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testCachedAcrossInstances() throws Throwable {
+        CityObligation first = new CityObligation();
+        fulfill(first);
+        sleep(100);
+        CityObligation second = new CityObligation();
+        fulfill(second);
+        assertEquals("Berlin", first.city);
+        assertEquals("Berlin", second.city); // synchronously, since the async method wasn't run
+        assertEquals(1, sCityCalls.get());
+    }
+
+    public void testPrunesUpstream() throws Throwable {
+        int tokens = sTokenCalls.get();
+        int profiles = sProfileCalls.get();
+        ProfileObligation first = new ProfileObligation();
+        first.setUser("alice");
+        fulfill(first);
+        ProfileObligation second = new ProfileObligation();
+        second.setUser("alice");
+        fulfill(second);
+        assertEquals("profile of alice", second.profile);
+        assertEquals(tokens + 1, sTokenCalls.get());
+        assertEquals(profiles + 1, sProfileCalls.get());
+
+        // a different user is a different key, and evicts alice since there's only room for one
+        ProfileObligation third = new ProfileObligation();
+        third.setUser("bob");
+        fulfill(third);
+        ProfileObligation fourth = new ProfileObligation();
+        fourth.setUser("alice");
+        fulfill(fourth);
+        assertEquals("profile of bob", third.profile);
+        assertEquals("profile of alice", fourth.profile);
+        assertEquals(tokens + 3, sTokenCalls.get());
+        assertEquals(profiles + 3, sProfileCalls.get());
+    }
+
+    public void testTtl() throws Throwable {
+        fulfill(new WeatherObligation());
+        fulfill(new WeatherObligation());
+        assertEquals(1, sWeatherCalls.get());
+        sleep(100);
+        fulfill(new WeatherObligation());
+        assertEquals(2, sWeatherCalls.get());
+    }
+}
@@ -0,0 +1,110 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CancellationTest extends JvmTestCase {
+    // both providers share a single thread, so one of them runs while the other is queued
+    public class SlowObligation extends Obligation {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        volatile boolean listenerCalled = false;
+        volatile boolean tokenCancelled = false;
+        boolean goalCalled = false;
+        boolean completed = false;
+
+        private int block() {
+            started.incrementAndGet();
+            getCancellationToken().onCancel(new Runnable() {
+                @Override
+                public void run() {
+                    listenerCalled = true;
+                }
+            });
+            try {
+                Thread.sleep(2000);
+                finished.incrementAndGet();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                tokenCancelled = getCancellationToken().isCancelled();
+            }
+            return 1;
+        }
+
+        @Provides(1)
+        @Async(pool = "cancel")
+        int a() {
+            return block();
+        }
+
+        @Provides(2)
+        @Async(pool = "cancel")
+        int b() {
+            return block();
+        }
+
+        @Needs({1, 2})
+        @Goal
+        void done() {
+            goalCalled = true;
+        }
+
+        @Override
+        protected void onComplete() {
+            completed = true;
+        }
+    }
+
+    public void testInterrupt() throws Throwable {
+        Pools.register("cancel", 1);
+        final SlowObligation o = new SlowObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(100);
+        final int[] aborted = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                aborted[0] = o.cancel(true);
+            }
+        });
+        sleep(100);
+        assertEquals(2, aborted[0]);
+        assertEquals(1, o.started.get());
+        assertEquals(1, o.interrupted.get());
+        assertEquals(0, o.finished.get());
+        assertTrue(o.tokenCancelled);
+        assertTrue(o.listenerCalled);
+        assertFalse(o.goalCalled);
+        assertFalse(o.completed);
+    }
+
+    public void testNoInterrupt() throws Throwable {
+        Pools.register("cancel", 1);
+        final SlowObligation o = new SlowObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(100);
+        final int[] aborted = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                aborted[0] = o.cancel(false);
+            }
+        });
+        assertEquals(1, aborted[0]); // only the queued one
+        assertEquals(1, o.started.get());
+        assertEquals(0, o.interrupted.get());
+        assertFalse(o.goalCalled);
+    }
+}
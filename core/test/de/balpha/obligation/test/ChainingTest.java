@@ -0,0 +1,244 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ChainingTest extends JvmTestCase {
+    public static class ChainObligation extends Obligation {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        volatile int result;
+        CountDownLatch gate; // if given, the first method waits for it
+
+        int step(String name, int x) {
+            calls.add(name + " " + x);
+            threads.add(Thread.currentThread());
+            return x + 1;
+        }
+
+        @Provides(1)
+        @Async
+        int first() {
+            try {
+                if (gate != null)
+                    gate.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return step("first", 0);
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        int second(int x) {
+            return step("second", x);
+        }
+
+        @Provides(3)
+        @Needs(2)
+        @Async
+        int third(int x) {
+            return step("third", x);
+        }
+
+        @Needs(3)
+        @Goal
+        void done(int x) {
+            result = x;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper exceptionWrapper, int objectId) {
+            calls.add("exception " + objectId);
+            exceptionWrapper.useResult(10);
+        }
+    }
+
+    public static class FailingObligation extends ChainObligation {
+        @Provides(1)
+        @Async
+        int first() {
+            calls.add("first");
+            throw new IllegalStateException();
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        int second(int x) {
+            return step("second", x);
+        }
+
+        @Provides(3)
+        @Needs(2)
+        @Async
+        int third(int x) {
+            return step("third", x);
+        }
+
+        @Needs(3)
+        @Goal
+        void done(int x) {
+            result = x;
+        }
+    }
+
+    public static class TimeoutObligation extends ChainObligation {
+        @Provides(1)
+        @Async
+        @Timeout(50)
+        int first() {
+            calls.add("first");
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                // the result is ignored anyway
+            }
+            return 0;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        int second(int x) {
+            return step("second", x);
+        }
+
+        @Provides(3)
+        @Needs(2)
+        @Async
+        int third(int x) {
+            return step("third", x);
+        }
+
+        @Needs(3)
+        @Goal
+        void done(int x) {
+            result = x;
+        }
+    }
+
+    // the second method, which is chained after the first, fails once, and is retried
+    public static class RetryObligation extends ChainObligation {
+        volatile boolean failed = false;
+        volatile ExceptionWrapper problem;
+
+        @Provides(1)
+        @Async
+        int first() {
+            return step("first", 0);
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        int second(int x) {
+            if (!failed) {
+                failed = true;
+                calls.add("second fails");
+                throw new IllegalStateException();
+            }
+            return step("second", x);
+        }
+
+        @Provides(3)
+        @Needs(2)
+        @Async
+        int third(int x) {
+            return step("third", x);
+        }
+
+        @Needs(3)
+        @Goal
+        void done(int x) {
+            result = x;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper exceptionWrapper, int objectId) {
+            calls.add("exception " + objectId);
+            problem = exceptionWrapper;
+            exceptionWrapper.expectRetry();
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testChainRunsWhileMainThreadIsBusy() throws Throwable {
+        final ChainObligation o = new ChainObligation();
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        o.gate = busy;
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+                // keep the main thread busy from before the first method is done
+                dispatcher.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        busy.countDown();
+                        try {
+                            release.await(2, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+            }
+        });
+        sleep(100);
+        assertEquals("[first 0, second 1, third 2]", o.calls.toString());
+        assertSame(o.threads.get(0), o.threads.get(2));
+        assertEquals(0, o.result);
+
+        release.countDown();
+        sleep(100);
+        assertEquals(3, o.result);
+    }
+
+    public void testFailureReleasesChain() throws Throwable {
+        FailingObligation o = new FailingObligation();
+        fulfill(o);
+        sleep(200);
+        assertEquals("[first, exception 1, second 10, third 11]", o.calls.toString());
+        assertEquals(12, o.result);
+    }
+
+    public void testTimeoutReleasesChain() throws Throwable {
+        TimeoutObligation o = new TimeoutObligation();
+        fulfill(o);
+        sleep(300);
+        assertEquals("[first, exception 1, second 10, third 11]", o.calls.toString());
+        assertEquals(12, o.result);
+    }
+
+    public void testRetryChained() throws Throwable {
+        final RetryObligation o = new RetryObligation();
+        fulfill(o);
+        sleep(100);
+        assertEquals("[first 0, second fails, exception 2]", o.calls.toString());
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.problem.retry();
+            }
+        });
+        sleep(100);
+        assertEquals("[first 0, second fails, exception 2, second 1, third 2]", o.calls.toString());
+        assertEquals(3, o.result);
+    }
+}
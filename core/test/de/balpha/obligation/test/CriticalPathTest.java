@@ -0,0 +1,148 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CriticalPathTest extends JvmTestCase {
+    static int work(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return ms;
+    }
+
+    public static class ProfileObligation extends Obligation {
+        @Provides(1)
+        @Async
+        int user() {
+            return work(100);
+        }
+
+        @Provides(2)
+        @Async
+        int settings() {
+            return work(20);
+        }
+
+        @Provides(3)
+        @Needs(1)
+        @Async
+        int friends(int user) {
+            return work(30);
+        }
+
+        @Needs({3, 2})
+        @Goal
+        void show(int friends, int settings) { }
+    }
+
+    public static class SaturatedObligation extends Obligation {
+        @Provides(1)
+        @Async(pool = "saturated")
+        int first() {
+            return work(60);
+        }
+
+        @Provides(2)
+        @Async(pool = "saturated")
+        int second() {
+            return work(60);
+        }
+
+        @Needs({1, 2})
+        @Goal
+        void show(int first, int second) { }
+    }
+
+    public static class FailingObligation extends Obligation {
+        @Provides(1)
+        @Async
+        int user() {
+            throw new IllegalStateException("offline");
+        }
+
+        @Needs(1)
+        @Goal
+        void show(int user) { }
+    }
+
+    private CriticalPathAnalyzer.Report analyze(final Obligation o) throws Throwable {
+        CriticalPathAnalyzer analyzer = new CriticalPathAnalyzer();
+        o.setListener(analyzer);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(400);
+        assertEquals(1, analyzer.getReports().size());
+        return analyzer.getReports().get(0);
+    }
+
+    private static List<String> methods(CriticalPathAnalyzer.Report report) {
+        List<String> methods = new ArrayList<String>();
+        for (CriticalPathAnalyzer.Step step : report.criticalPath)
+            methods.add(step.method);
+        return methods;
+    }
+
+    public void testCriticalPath() throws Throwable {
+        CriticalPathAnalyzer.Report report = analyze(new ProfileObligation());
+        assertEquals("[user, friends, show]", methods(report).toString());
+        assertTrue(report.total >= 130000000L);
+        assertTrue(report.criticalPath.get(0).ran >= 100000000L);
+        assertTrue(report.criticalPath.get(0).async);
+        assertFalse(report.criticalPath.get(2).async);
+
+        // settings could have taken about 110 ms longer without making a difference
+        assertEquals(1, report.slack.size());
+        long slack = report.slack.get("settings");
+        assertTrue(slack > 80000000L && slack < 140000000L);
+        assertTrue(report.toString().contains("critical path:\n  user: "));
+    }
+
+    public void testPoolWait() throws Throwable {
+        Pools.register("saturated", 1);
+        CriticalPathAnalyzer.Report report = analyze(new SaturatedObligation());
+
+        // with a single thread, the second method had to wait for the first one
+        assertEquals("[second, show]", methods(report).toString());
+        assertTrue(report.poolWait >= 50000000L);
+        // slack doesn't take the shared thread into account
+        long slack = report.slack.get("first");
+        assertTrue(slack > 40000000L && slack < 100000000L);
+    }
+
+    public void testFailedNotKept() throws Throwable {
+        CriticalPathAnalyzer analyzer = new CriticalPathAnalyzer();
+        WeakReference<Obligation> ref = fulfillFailing(analyzer);
+        sleep(100);
+
+        // it never completes, but once the app drops it, the analyzer doesn't keep it either
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+            sleep(10);
+        }
+        assertNull(ref.get());
+        assertEquals(0, analyzer.getReports().size());
+    }
+
+    // a separate method, so nothing but the weak reference is left to the caller
+    private WeakReference<Obligation> fulfillFailing(CriticalPathAnalyzer analyzer) throws Throwable {
+        final FailingObligation o = new FailingObligation();
+        o.setListener(analyzer);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        return new WeakReference<Obligation>(o);
+    }
+}
@@ -0,0 +1,96 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+public class DispatcherTest extends JvmTestCase {
+    public class ChainObligation extends Obligation {
+        int result;
+        boolean complete = false;
+        boolean asyncOnMainThread = true;
+        boolean goalOnMainThread = false;
+        boolean completeOnMainThread = false;
+
+        @Provides(1)
+        int start() {
+            return 3;
+        }
+
+        @Needs(1)
+        @Provides(2)
+        @Async
+        int twice(int input) {
+            asyncOnMainThread = dispatcher.isMainThread();
+            sleep(50);
+            return 2 * input;
+        }
+
+        @Needs(2)
+        @Goal
+        void done(int input) {
+            goalOnMainThread = dispatcher.isMainThread();
+            result = input;
+        }
+
+        @Override
+        protected void onComplete() {
+            completeOnMainThread = dispatcher.isMainThread();
+            complete = true;
+        }
+    }
+
+    public void testFulfill() throws Throwable {
+        final ChainObligation o = new ChainObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(200);
+        assertTrue(o.complete);
+        assertEquals(6, o.result);
+        assertFalse(o.asyncOnMainThread);
+        assertTrue(o.goalOnMainThread);
+        assertTrue(o.completeOnMainThread);
+    }
+
+    public void testFulfillOffMainThread() {
+        try {
+            new ChainObligation().fulfill();
+            fail("fulfill() should only work on the main thread");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("must be called from the UI thread"));
+        }
+    }
+
+    public void testPerObligationDispatcher() throws Throwable {
+        final ExecutorDispatcher other = new ExecutorDispatcher(1);
+        try {
+            final ChainObligation o = new ChainObligation();
+            o.setDispatcher(other);
+            final boolean[] failedOnDefault = new boolean[1];
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        o.fulfill();
+                    } catch (RuntimeException e) {
+                        failedOnDefault[0] = true;
+                    }
+                }
+            });
+            assertTrue(failedOnDefault[0]);
+            other.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    o.fulfill();
+                }
+            });
+            sleep(200);
+            assertTrue(o.complete);
+            assertEquals(6, o.result);
+        } finally {
+            other.shutdown();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalTest extends JvmTestCase {
+    public static class WeatherObligation extends Obligation {
+        static final int UNIT = 1;
+        static final int FORECAST = 2;
+        static final int TEMPERATURE = 3;
+        static final int CITY = 4;
+
+        final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        volatile int fetches = 0;
+        volatile int delay = 0;
+        volatile int completions = 0;
+        volatile String switchUnitTo; // makes temperature() change the unit once
+        volatile boolean reloadOnce; // makes temperature() reload the forecast once
+
+        @Provides(UNIT)
+        String unit() {
+            calls.add("unit");
+            return "C";
+        }
+
+        @Provides(FORECAST)
+        @Async
+        Integer forecast() {
+            int fetch = ++fetches;
+            calls.add("forecast " + fetch);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // just return early
+                }
+            }
+            return 20 + fetch;
+        }
+
+        @Provides(TEMPERATURE)
+        @Needs({FORECAST, UNIT})
+        String temperature(Integer celsius, String unit) {
+            calls.add("temperature");
+            if (switchUnitTo != null) {
+                String newUnit = switchUnitTo;
+                switchUnitTo = null;
+                setUnit(newUnit);
+            }
+            if (reloadOnce) {
+                reloadOnce = false;
+                reloadForecast();
+            }
+            return unit.equals("F") ? (celsius * 9 / 5 + 32) + " F" : celsius + " C";
+        }
+
+        @Provides(CITY)
+        String city() {
+            calls.add("city");
+            return "Berlin";
+        }
+
+        @Needs({CITY, TEMPERATURE})
+        @Goal
+        void show(String city, String temperature) {
+            calls.add("show " + city + " " + temperature);
+        }
+
+        @Override
+        protected void onComplete() {
+            completions++;
+        }
+
+        void setUnit(String unit) {
+            update(UNIT, unit);
+        }
+
+        void setForecast(Integer celsius) {
+            update(FORECAST, celsius);
+        }
+
+        void reloadForecast() {
+            invalidate(FORECAST);
+        }
+    }
+
+    private void onMainThread(Runnable runnable) throws Throwable {
+        runOnMainThread(runnable);
+        sleep(100);
+    }
+
+    private WeatherObligation fulfilled() throws Throwable {
+        final WeatherObligation o = new WeatherObligation();
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        assertEquals("show Berlin 21 C", o.calls.get(o.calls.size() - 1));
+        o.calls.clear();
+        return o;
+    }
+
+    public void testUpdate() throws Throwable {
+        final WeatherObligation o = fulfilled();
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.setUnit("F");
+            }
+        });
+        // neither the forecast nor the city are needed again
+        assertEquals("[temperature, show Berlin 69 F]", o.calls.toString());
+        assertEquals(2, o.completions);
+    }
+
+    public void testInvalidate() throws Throwable {
+        final WeatherObligation o = fulfilled();
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.reloadForecast();
+            }
+        });
+        assertEquals("[forecast 2, temperature, show Berlin 22 C]", o.calls.toString());
+        assertEquals(2, o.completions);
+    }
+
+    public void testUpdateWhileRunning() throws Throwable {
+        final WeatherObligation o = new WeatherObligation();
+        o.delay = 100;
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(50);
+        // the forecast that is still being fetched is ignored
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.setForecast(30);
+            }
+        });
+        assertEquals(1, o.fetches);
+        assertEquals("show Berlin 30 C", o.calls.get(o.calls.size() - 1));
+        assertEquals(1, Collections.frequency(o.calls, "temperature"));
+        assertEquals(1, o.completions);
+    }
+
+    public void testUpdateFromDependent() throws Throwable {
+        final WeatherObligation o = new WeatherObligation();
+        o.switchUnitTo = "F";
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        // what the first call returned is dropped, since it was computed from the old unit
+        assertEquals(2, Collections.frequency(o.calls, "temperature"));
+        assertEquals("show Berlin 69 F", o.calls.get(o.calls.size() - 1));
+        assertEquals(1, Collections.frequency(o.calls, "show Berlin 69 F"));
+        assertEquals(1, o.completions);
+    }
+
+    public void testInvalidateFromDependent() throws Throwable {
+        final WeatherObligation o = new WeatherObligation();
+        o.reloadOnce = true;
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        assertEquals(2, o.fetches);
+        assertEquals(2, Collections.frequency(o.calls, "temperature"));
+        assertEquals("show Berlin 22 C", o.calls.get(o.calls.size() - 1));
+        assertEquals(1, o.completions);
+    }
+
+    public void testUpdateBeforeFulfill() {
+        WeatherObligation o = new WeatherObligation();
+        try {
+            o.setUnit("F");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Obligation can only be updated after fulfillment has started"));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.ExecutorDispatcher;
+import de.balpha.obligation.Obligation;
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// base class for the tests that run on a plain JVM, with an ExecutorDispatcher standing in for Android
+public abstract class JvmTestCase extends TestCase {
+    protected ExecutorDispatcher dispatcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dispatcher = new ExecutorDispatcher();
+        Obligation.setDefaultDispatcher(dispatcher);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        dispatcher.shutdown();
+        super.tearDown();
+    }
+
+    public void sleep(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // the equivalent of runTestOnUiThread()
+    public void runOnMainThread(final Runnable runnable) throws Throwable {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Throwable[] thrown = new Throwable[1];
+        dispatcher.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        if (!latch.await(5, TimeUnit.SECONDS))
+            fail("timed out waiting for the main thread");
+        if (thrown[0] != null)
+            throw thrown[0];
+    }
+}
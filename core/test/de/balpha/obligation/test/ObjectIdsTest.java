@@ -0,0 +1,85 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+public class ObjectIdsTest extends JvmTestCase {
+    // ids too far apart to be kept in an array
+    public static class SparseObligation extends Obligation {
+        static final int NAME = 7;
+        static final int GREETING = 1000000;
+        static final int LENGTH = Integer.MAX_VALUE;
+
+        volatile String shown;
+        volatile int failedId;
+
+        @Provides(NAME)
+        String name() {
+            return "world";
+        }
+
+        @Provides(GREETING)
+        @Needs(NAME)
+        String greeting(String name) {
+            return "hello " + name;
+        }
+
+        @Provides(LENGTH)
+        @Needs(GREETING)
+        int length(String greeting) {
+            if (greeting.startsWith("fail"))
+                throw new IllegalStateException();
+            return greeting.length();
+        }
+
+        @Needs({GREETING, LENGTH})
+        @Goal
+        void show(String greeting, int length) {
+            shown = greeting + " " + length;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper exceptionWrapper, int objectId) {
+            failedId = objectId;
+            exceptionWrapper.useResult(0);
+        }
+
+        void give(int id, Object data) {
+            setResult(id, data);
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testSparseIds() throws Throwable {
+        SparseObligation o = new SparseObligation();
+        fulfill(o);
+        sleep(100);
+        assertEquals("hello world 11", o.shown);
+    }
+
+    public void testGivenResultAndExceptionId() throws Throwable {
+        SparseObligation o = new SparseObligation();
+        o.give(SparseObligation.GREETING, "fail");
+        fulfill(o);
+        sleep(100);
+        assertEquals(SparseObligation.LENGTH, o.failedId);
+        assertEquals("fail 0", o.shown);
+    }
+
+    public void testUnknownId() {
+        SparseObligation o = new SparseObligation();
+        try {
+            o.give(8, "x");
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals("Obligation object id 8 isn't provided by any method", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+public class PoolsTest extends JvmTestCase {
+    public class PoolObligation extends Obligation {
+        String slowThread;
+        String fastThread;
+        String computeThread;
+        long fastDoneAt;
+        long slowDoneAt;
+
+        @Provides(1)
+        @Async(pool = "single")
+        int slow() {
+            slowThread = Thread.currentThread().getName();
+            sleep(200);
+            slowDoneAt = System.currentTimeMillis();
+            return 1;
+        }
+
+        @Provides(2)
+        @Async(pool = "single")
+        int queued() {
+            return 2;
+        }
+
+        @Provides(3)
+        @Async(pool = Pools.COMPUTE)
+        int fast() {
+            computeThread = Thread.currentThread().getName();
+            fastDoneAt = System.currentTimeMillis();
+            return 3;
+        }
+
+        @Provides(4)
+        @Async
+        int unnamed() {
+            fastThread = Thread.currentThread().getName();
+            return 4;
+        }
+
+        @Needs({1, 2, 3, 4})
+        @Goal
+        void done() { }
+    }
+
+    public class UnknownPoolObligation extends Obligation {
+        boolean handle;
+        Throwable handled;
+        int result;
+        boolean completed;
+
+        @Provides(1)
+        @Async(pool = "nope")
+        int foo() {
+            return 1;
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int foo) {
+            result = foo;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper problem, int dataId) {
+            if (!handle)
+                return;
+            handled = problem.exception;
+            problem.useResult(2);
+        }
+
+        @Override
+        protected void onComplete() {
+            completed = true;
+        }
+    }
+
+    public void testPools() throws Throwable {
+        Pools.register("single", 1);
+        final PoolObligation o = new PoolObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(400);
+        assertEquals("Obligation single", o.slowThread);
+        assertEquals("Obligation compute", o.computeThread);
+        assertEquals("Obligation worker", o.fastThread);
+        assertTrue(o.fastDoneAt < o.slowDoneAt);
+    }
+
+    public void testUnknownPool() throws Throwable {
+        final UnknownPoolObligation o = new UnknownPoolObligation();
+        final RuntimeException[] thrown = new RuntimeException[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    o.fulfill();
+                } catch (RuntimeException e) {
+                    thrown[0] = e;
+                }
+            }
+        });
+        assertNotNull(thrown[0]);
+        assertTrue(thrown[0].getMessage().contains("No pool named \"nope\""));
+    }
+
+    public void testUnknownPoolHandled() throws Throwable {
+        final UnknownPoolObligation o = new UnknownPoolObligation();
+        o.handle = true;
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(100);
+        assertTrue(o.handled.getMessage().contains("No pool named \"nope\""));
+        // nothing was left counted as running, so the obligation completes with the result given instead
+        assertEquals(2, o.result);
+        assertTrue(o.completed);
+    }
+}
@@ -0,0 +1,130 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PrefetchTest extends JvmTestCase {
+    static AtomicInteger sLoads;
+    static AtomicInteger sFormats;
+    static AtomicInteger sInterrupted;
+    static CountDownLatch sRelease;
+    static boolean sFailFirst;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sLoads = new AtomicInteger();
+        sFormats = new AtomicInteger();
+        sInterrupted = new AtomicInteger();
+        sRelease = new CountDownLatch(1);
+        sFailFirst = false;
+    }
+
+    public static class ArticleObligation extends Obligation {
+        String shown;
+
+        @Provides(1)
+        @Async
+        String load() {
+            int call = sLoads.incrementAndGet();
+            try {
+                if (!sRelease.await(2, TimeUnit.SECONDS))
+                    throw new RuntimeException("never released");
+            } catch (InterruptedException e) {
+                sInterrupted.incrementAndGet();
+                return null;
+            }
+            if (sFailFirst && call == 1)
+                throw new RuntimeException("first load fails");
+            return "article";
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        String format(String article) {
+            sFormats.incrementAndGet();
+            return "formatted " + article;
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String text) {
+            shown = text;
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testFinished() throws Throwable {
+        ArticleObligation o = new ArticleObligation();
+        sRelease.countDown();
+        o.prefetch();
+        sleep(100);
+        assertEquals(1, sLoads.get());
+        // only providers without missing data are prefetched
+        assertEquals(0, sFormats.get());
+        assertNull(o.shown);
+
+        fulfill(o);
+        sleep(100);
+        assertEquals(1, sLoads.get());
+        assertEquals(1, sFormats.get());
+        assertEquals("formatted article", o.shown);
+    }
+
+    public void testInFlight() throws Throwable {
+        ArticleObligation o = new ArticleObligation();
+        o.prefetch();
+        o.prefetch();
+        sleep(100);
+        fulfill(o);
+        sleep(100);
+        assertEquals(1, sLoads.get());
+        assertNull(o.shown);
+
+        sRelease.countDown();
+        sleep(100);
+        assertEquals(1, sLoads.get());
+        assertEquals("formatted article", o.shown);
+    }
+
+    public void testFailedRunsAgain() throws Throwable {
+        sFailFirst = true;
+        sRelease.countDown();
+        ArticleObligation o = new ArticleObligation();
+        o.prefetch();
+        sleep(100);
+        fulfill(o);
+        sleep(100);
+        assertEquals(2, sLoads.get());
+        assertEquals("formatted article", o.shown);
+    }
+
+    public void testCancel() throws Throwable {
+        final ArticleObligation o = new ArticleObligation();
+        o.prefetch();
+        sleep(100);
+        final int[] aborted = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                aborted[0] = o.cancel(true);
+            }
+        });
+        sleep(100);
+        assertEquals(1, aborted[0]);
+        assertEquals(1, sInterrupted.get());
+        assertNull(o.shown);
+    }
+}
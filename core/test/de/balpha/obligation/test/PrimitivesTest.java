@@ -0,0 +1,113 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+public class PrimitivesTest extends JvmTestCase {
+    public static class NumbersObligation extends Obligation {
+        volatile String shown;
+
+        @Provides(1)
+        int count() {
+            return 3;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        long total(int count) {
+            return count * 10000000000L;
+        }
+
+        @Provides(3)
+        @Needs(2)
+        double average(long total) {
+            return total / 4.0;
+        }
+
+        @Provides(4)
+        @Needs(3)
+        boolean large(double average) {
+            return average > 1e9;
+        }
+
+        @Provides(5)
+        @Needs(1)
+        char grade(int count) {
+            return (char) ('A' + count);
+        }
+
+        @Provides(6)
+        @Needs(3)
+        @Async
+        float ratio(double average) {
+            return (float) (average / 1e10);
+        }
+
+        @Needs({1, 2, 3, 4, 5, 6})
+        @Goal
+        void show(int count, long total, double average, boolean large, char grade, float ratio) {
+            shown = count + " " + total + " " + average + " " + large + " " + grade + " " + ratio;
+        }
+
+        void give(int id, Object data) {
+            setResult(id, data);
+        }
+    }
+
+    // a goal that returns something, although nothing can use it
+    public static class CountingGoalObligation extends Obligation {
+        volatile int finished;
+
+        @Provides(1)
+        String name() {
+            return "done";
+        }
+
+        @Needs(1)
+        @Goal
+        int finish(String name) {
+            finished = name.length();
+            return finished;
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testPrimitiveResults() throws Throwable {
+        NumbersObligation o = new NumbersObligation();
+        fulfill(o);
+        sleep(100);
+        assertEquals("3 30000000000 7.5E9 true D 0.75", o.shown);
+    }
+
+    public void testGivenPrimitiveResult() throws Throwable {
+        NumbersObligation o = new NumbersObligation();
+        o.give(1, -2);
+        fulfill(o);
+        sleep(100);
+        assertEquals("-2 -20000000000 -5.0E9 false ? -0.5", o.shown);
+    }
+
+    public void testGoalReturningPrimitive() throws Throwable {
+        CountingGoalObligation o = new CountingGoalObligation();
+        fulfill(o);
+        sleep(100);
+        assertEquals(4, o.finished);
+    }
+
+    public void testWrongType() {
+        NumbersObligation o = new NumbersObligation();
+        try {
+            o.give(2, 5); // an Integer for a long
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("setResult given wrong type; expected long"));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ResetTest extends JvmTestCase {
+    public static class FeedObligation extends Obligation {
+        final List<String> shown = Collections.synchronizedList(new ArrayList<String>());
+        volatile int loads = 0;
+        volatile int completions = 0;
+        volatile int delay = 0;
+        volatile CancellationToken token;
+
+        @Provides(1)
+        String user() {
+            return "anonymous";
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        String feed(String user) {
+            token = getCancellationToken();
+            int load = ++loads;
+            if (delay > 0)
+                sleep(delay);
+            return user + " " + load;
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String feed) {
+            shown.add(feed);
+        }
+
+        @Override
+        protected void onComplete() {
+            completions++;
+        }
+
+        void give(String user) {
+            setResult(1, user);
+        }
+
+        private static void sleep(int ms) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                // just return early
+            }
+        }
+    }
+
+    private void onMainThread(Runnable runnable) throws Throwable {
+        runOnMainThread(runnable);
+        sleep(100);
+    }
+
+    public void testRefulfill() throws Throwable {
+        final FeedObligation o = new FeedObligation();
+        o.give("alice");
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.refulfill();
+            }
+        });
+        assertEquals("[alice 1, alice 2]", o.shown.toString());
+        assertEquals(2, o.completions);
+    }
+
+    public void testResetDiscardsGivenData() throws Throwable {
+        final FeedObligation o = new FeedObligation();
+        o.give("alice");
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+                try {
+                    o.fulfill();
+                    fail();
+                } catch (RuntimeException e) {
+                    // it has to be reset first
+                }
+            }
+        });
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.reset();
+                o.give("bob");
+                o.fulfill();
+            }
+        });
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.reset();
+                o.fulfill();
+            }
+        });
+        assertEquals("[alice 1, bob 2, anonymous 3]", o.shown.toString());
+    }
+
+    public void testResetWhileRunning() throws Throwable {
+        final FeedObligation o = new FeedObligation();
+        o.delay = 100;
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(50);
+        final CancellationToken first = o.token;
+        o.delay = 0;
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.refulfill();
+            }
+        });
+        // the first load is cancelled, and its result ignored
+        assertTrue(first.isCancelled());
+        assertNotSame(first, o.token);
+        assertEquals("[anonymous 2]", o.shown.toString());
+        assertEquals(1, o.completions);
+
+        onMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.refulfill();
+            }
+        });
+        assertEquals("[anonymous 2, anonymous 3]", o.shown.toString());
+        assertEquals(2, o.completions);
+    }
+}
@@ -0,0 +1,178 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetryTest extends JvmTestCase {
+    public class FlakyObligation extends Obligation {
+        final AtomicInteger calls = new AtomicInteger();
+        final int failures;
+        volatile boolean onMainThread = false;
+        Throwable exception;
+        int result = 0;
+
+        FlakyObligation(int failures) {
+            this.failures = failures;
+        }
+
+        int attempt() {
+            if (dispatcher.isMainThread())
+                onMainThread = true;
+            if (calls.incrementAndGet() <= failures)
+                throw new IllegalStateException("backend unavailable");
+            return 42;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper exceptionWrapper, int objectId) {
+            exception = exceptionWrapper.exception;
+            exceptionWrapper.useResult(-1);
+        }
+    }
+
+    public class QuickRetryObligation extends FlakyObligation {
+        QuickRetryObligation(int failures) {
+            super(failures);
+        }
+
+        @Provides(1)
+        @Async
+        @Retry(maxAttempts = 3, backoff = 20, jitter = 0.5)
+        int load() {
+            return attempt();
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) {
+            result = a;
+        }
+    }
+
+    public class SlowRetryObligation extends FlakyObligation {
+        SlowRetryObligation(int failures) {
+            super(failures);
+        }
+
+        @Provides(1)
+        @Async
+        @Retry(maxAttempts = 3, backoff = 300)
+        int load() {
+            return attempt();
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) {
+            result = a;
+        }
+    }
+
+    public class SharedPoolObligation extends FlakyObligation {
+        volatile boolean otherDone = false;
+        volatile int callsWhenOtherDone = 0;
+
+        SharedPoolObligation() {
+            super(1);
+        }
+
+        @Provides(1)
+        @Async(pool = "retry")
+        @Retry(maxAttempts = 2, backoff = 300)
+        int load() {
+            return attempt();
+        }
+
+        @Provides(2)
+        @Async(pool = "retry")
+        int other() {
+            callsWhenOtherDone = calls.get();
+            otherDone = true;
+            return 1;
+        }
+
+        @Needs({1, 2})
+        @Goal
+        void done(int a, int b) {
+            result = a + b;
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testSucceedsAfterRetries() throws Throwable {
+        QuickRetryObligation o = new QuickRetryObligation(2);
+        fulfill(o);
+        sleep(300);
+        assertEquals(3, o.calls.get());
+        assertFalse(o.onMainThread);
+        assertNull(o.exception);
+        assertEquals(42, o.result);
+    }
+
+    public void testExhausted() throws Throwable {
+        QuickRetryObligation o = new QuickRetryObligation(5);
+        fulfill(o);
+        sleep(300);
+        assertEquals(3, o.calls.get());
+        assertTrue(o.exception instanceof IllegalStateException);
+        assertEquals(-1, o.result);
+    }
+
+    public void testCancelStopsRetrying() throws Throwable {
+        final SlowRetryObligation o = new SlowRetryObligation(5);
+        fulfill(o);
+        sleep(100);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.cancel();
+            }
+        });
+        sleep(600);
+        assertEquals(1, o.calls.get());
+        assertNull(o.exception);
+        assertEquals(0, o.result);
+    }
+
+    public void testBackoffFreesThread() throws Throwable {
+        Pools.register("retry", 1);
+        SharedPoolObligation o = new SharedPoolObligation();
+        fulfill(o);
+        sleep(150);
+        // the pool's only thread isn't held while waiting for the second attempt
+        assertTrue(o.otherDone);
+        assertEquals(1, o.callsWhenOtherDone);
+        assertEquals(1, o.calls.get());
+        sleep(400);
+        assertEquals(2, o.calls.get());
+        assertNull(o.exception);
+        assertEquals(43, o.result);
+    }
+
+    public void testRetryRequiresAsync() {
+        String error = Obligation.checkObligation(SyncRetryObligation.class);
+        assertNotNull(error);
+        assertTrue(error.contains("@Retry"));
+    }
+
+    public static class SyncRetryObligation extends Obligation {
+        @Provides(1)
+        @Retry
+        int sync() {
+            return 1;
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) { }
+    }
+}
@@ -0,0 +1,268 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SchedulingTest extends JvmTestCase {
+    public class DiamondObligation extends Obligation {
+        ArrayList<String> calls = new ArrayList<String>();
+        int result;
+        boolean complete = false;
+
+        @Provides(1)
+        int top() {
+            calls.add("top");
+            return 1;
+        }
+
+        @Needs(1)
+        @Provides(2)
+        @Async
+        int left(int x) {
+            sleep(20);
+            return x + 1;
+        }
+
+        @Needs(1)
+        @Provides(3)
+        int right(int x) {
+            calls.add("right");
+            return x + 2;
+        }
+
+        @Needs({2, 3})
+        @Provides(4)
+        int bottom(int l, int r) {
+            calls.add("bottom");
+            return l * r;
+        }
+
+        @Provides(5)
+        int unused() {
+            calls.add("unused");
+            return 0;
+        }
+
+        @Needs({4, 4})
+        @Goal
+        void done(int x) {
+            calls.add("done");
+            result = x;
+        }
+
+        public void setTop(int top) {
+            setResult(1, top);
+        }
+
+        @Override
+        protected void onComplete() {
+            complete = true;
+        }
+    }
+
+    public void testDiamond() throws Throwable {
+        final DiamondObligation o = new DiamondObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(200);
+        assertTrue(o.complete);
+        assertEquals(6, o.result);
+        assertEquals("[top, right, bottom, done]", o.calls.toString());
+    }
+
+    public void testExternalResult() throws Throwable {
+        final DiamondObligation o = new DiamondObligation();
+        o.setTop(10);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(200);
+        assertTrue(o.complete);
+        assertEquals(11 * 12, o.result);
+        assertEquals("[right, bottom, done]", o.calls.toString());
+    }
+
+    public class RetryObligation extends Obligation {
+        int attempts = 0;
+        int result;
+        boolean complete = false;
+        boolean otherDone = false;
+
+        @Provides(1)
+        @Async
+        int flaky() {
+            attempts++;
+            if (attempts == 1)
+                throw new RuntimeException();
+            return 42;
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int x) {
+            result = x;
+        }
+
+        @Provides(2)
+        @Async
+        int other() {
+            sleep(20);
+            return 0;
+        }
+
+        @Needs(2)
+        @Goal
+        void otherDone() {
+            otherDone = true;
+        }
+
+        @Override
+        protected void onException(final ExceptionWrapper problem, int dataId) {
+            problem.expectRetry(true);
+            dispatcher.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    sleep(50);
+                    problem.retry();
+                }
+            });
+        }
+
+        @Override
+        protected void onComplete() {
+            complete = true;
+        }
+    }
+
+    public void testRetry() throws Throwable {
+        final RetryObligation o = new RetryObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(300);
+        assertTrue(o.otherDone);
+        assertTrue(o.complete);
+        assertEquals(2, o.attempts);
+        assertEquals(42, o.result);
+    }
+
+    // all async methods share a single thread, so the order in which they're started is the order they run in
+    public class CriticalPathObligation extends Obligation {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+        @Provides(1)
+        @Async(pool = "critical")
+        int leaf() {
+            order.add("leaf");
+            return 1;
+        }
+
+        @Provides(2)
+        @Async(pool = "critical")
+        int head() {
+            order.add("head");
+            sleep(20);
+            return 2;
+        }
+
+        @Needs(2)
+        @Provides(3)
+        @Async(pool = "critical")
+        int middle(int x) {
+            order.add("middle");
+            return x;
+        }
+
+        @Needs(3)
+        @Provides(4)
+        @Async(pool = "critical")
+        int tail(int x) {
+            order.add("tail");
+            return x;
+        }
+
+        @Needs({1, 4})
+        @Goal
+        void done() { }
+    }
+
+    public void testCriticalPathFirst() throws Throwable {
+        Pools.register("critical", 1);
+        final CriticalPathObligation o = new CriticalPathObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(200);
+        // head's thread goes on with middle and tail right away, so leaf comes last
+        assertEquals("[head, middle, tail, leaf]", o.order.toString());
+    }
+
+    public static class WeightedObligation extends Obligation {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        @Provides(1)
+        @Async(pool = "weighted")
+        int slow() {
+            order.add("slow");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return 1;
+        }
+
+        @Provides(2)
+        @Async(pool = "weighted")
+        int fast() {
+            order.add("fast");
+            return 2;
+        }
+
+        @Needs({1, 2})
+        @Goal
+        void finish() { }
+
+        @Override
+        protected void onComplete() {
+            done.countDown();
+        }
+    }
+
+    // once the run times are known, the slow branch is the critical path
+    public void testWeightedByRunTime() throws Throwable {
+        Pools.register("weighted", 1);
+        WeightedObligation last = null;
+        for (int i = 0; i < 40; i++) {
+            final WeightedObligation o = new WeightedObligation();
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    o.fulfill();
+                }
+            });
+            assertTrue(o.done.await(1, TimeUnit.SECONDS));
+            last = o;
+        }
+        assertEquals("[slow, fast]", last.order.toString());
+    }
+}
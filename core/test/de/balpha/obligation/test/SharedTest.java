@@ -0,0 +1,200 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedTest extends JvmTestCase {
+    static AtomicInteger sCalls;
+    static AtomicInteger sInterrupted;
+    static AtomicInteger sStopped;
+    static CountDownLatch sRelease;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        sCalls = new AtomicInteger();
+        sInterrupted = new AtomicInteger();
+        sStopped = new AtomicInteger();
+        sRelease = new CountDownLatch(1);
+    }
+
+    public static class LookupObligation extends Obligation {
+        String name;
+        String id;
+
+        LookupObligation(String name) {
+            this.name = name;
+        }
+
+        @Provides(1)
+        String name() {
+            return name;
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Shared
+        String lookup(String name) {
+            sCalls.incrementAndGet();
+            try {
+                if (!sRelease.await(2, TimeUnit.SECONDS))
+                    throw new RuntimeException("never released");
+            } catch (InterruptedException e) {
+                sInterrupted.incrementAndGet();
+                return null;
+            }
+            return "id of " + name;
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String id) {
+            this.id = id;
+        }
+    }
+
+    // doesn't block, but checks its token until it's released
+    public static class PollingObligation extends Obligation {
+        String id;
+
+        @Provides(1)
+        String name() {
+            return "alice";
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        @Shared
+        String lookup(String name) throws InterruptedException {
+            CancellationToken token = getCancellationToken();
+            sCalls.incrementAndGet();
+            while (sRelease.getCount() > 0) {
+                if (token.isCancelled()) {
+                    sStopped.incrementAndGet();
+                    return null;
+                }
+                Thread.sleep(10);
+            }
+            return "id of " + name;
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String id) {
+            this.id = id;
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    private int cancel(Obligation o) throws Throwable {
+        return cancel(o, true);
+    }
+
+    private int cancel(final Obligation o, final boolean interrupt) throws Throwable {
+        final int[] aborted = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                aborted[0] = o.cancel(interrupt);
+            }
+        });
+        return aborted[0];
+    }
+
+    public void testCoalesced() throws Throwable {
+        LookupObligation first = new LookupObligation("alice");
+        LookupObligation second = new LookupObligation("alice");
+        LookupObligation third = new LookupObligation("bob");
+        fulfill(first);
+        fulfill(second);
+        fulfill(third);
+        sleep(100);
+        assertEquals(2, sCalls.get());
+        sRelease.countDown();
+        sleep(100);
+        assertEquals("id of alice", first.id);
+        assertEquals("id of alice", second.id);
+        assertEquals("id of bob", third.id);
+
+        // the call is done, so this one runs again
+        LookupObligation fourth = new LookupObligation("alice");
+        fulfill(fourth);
+        sleep(100);
+        assertEquals(3, sCalls.get());
+        assertEquals("id of alice", fourth.id);
+    }
+
+    public void testCancel() throws Throwable {
+        LookupObligation first = new LookupObligation("alice");
+        LookupObligation second = new LookupObligation("alice");
+        fulfill(first);
+        fulfill(second);
+        sleep(100);
+
+        // the second one is still waiting for the call, so it isn't stopped
+        assertEquals(0, cancel(first));
+        sRelease.countDown();
+        sleep(100);
+        assertEquals(0, sInterrupted.get());
+        assertNull(first.id);
+        assertEquals("id of alice", second.id);
+    }
+
+    public void testCancelAll() throws Throwable {
+        LookupObligation first = new LookupObligation("alice");
+        LookupObligation second = new LookupObligation("alice");
+        fulfill(first);
+        fulfill(second);
+        sleep(100);
+        assertEquals(0, cancel(first));
+        assertEquals(1, cancel(second));
+        sleep(100);
+        assertEquals(1, sCalls.get());
+        assertEquals(1, sInterrupted.get());
+    }
+
+    public void testTokenOfStarter() throws Throwable {
+        PollingObligation first = new PollingObligation();
+        PollingObligation second = new PollingObligation();
+        fulfill(first);
+        fulfill(second);
+        sleep(100);
+
+        // the method runs on the first one, but its token is the call's, so it keeps going for the second
+        cancel(first, false);
+        sleep(100);
+        assertEquals(0, sStopped.get());
+        sRelease.countDown();
+        sleep(100);
+        assertNull(first.id);
+        assertEquals("id of alice", second.id);
+    }
+
+    public void testTokenCancelledWithAll() throws Throwable {
+        PollingObligation first = new PollingObligation();
+        PollingObligation second = new PollingObligation();
+        fulfill(first);
+        fulfill(second);
+        sleep(100);
+        cancel(second, false);
+        sleep(100);
+        assertEquals(0, sStopped.get());
+        cancel(first, false);
+        sleep(100);
+        assertEquals(1, sCalls.get());
+        assertEquals(1, sStopped.get());
+    }
+}
@@ -0,0 +1,228 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamingTest extends JvmTestCase {
+    public class PagesObligation extends Obligation {
+        final AtomicInteger published = new AtomicInteger();
+        final AtomicInteger consumed = new AtomicInteger();
+        volatile int maxLag = 0;
+        volatile boolean publishCancelled = false;
+        final ArrayList<Integer> pages = new ArrayList<Integer>();
+        int pagesWhenDone = -1;
+        int count = 10;
+        int consumerDelay = 20;
+
+        @Provides(1)
+        @Async
+        @Streaming(buffer = 2)
+        List<Integer> pages() {
+            ArrayList<Integer> all = new ArrayList<Integer>();
+            try {
+                for (int i = 0; i < count; i++) {
+                    publish(1, i);
+                    all.add(i);
+                    maxLag = Math.max(maxLag, published.incrementAndGet() - consumed.get());
+                }
+            } catch (CancellationException e) {
+                publishCancelled = true;
+            }
+            return all;
+        }
+
+        @Consumes(1)
+        void page(Integer page) {
+            pages.add(page);
+            sleep(consumerDelay);
+            consumed.incrementAndGet();
+        }
+
+        @Needs(1)
+        @Goal
+        void done(List<Integer> all) {
+            pagesWhenDone = pages.size();
+        }
+    }
+
+    public void testChunks() throws Throwable {
+        final PagesObligation o = new PagesObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(600);
+        assertEquals(10, o.pages.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(i, (int) o.pages.get(i));
+        assertEquals(10, o.pagesWhenDone); // every chunk is consumed before the complete result is used
+        assertTrue(o.maxLag >= 1);
+        assertTrue("the producer got " + o.maxLag + " chunks ahead", o.maxLag <= 2);
+    }
+
+    public void testCancelWhilePublishing() throws Throwable {
+        final PagesObligation o = new PagesObligation();
+        o.count = 100;
+        o.consumerDelay = 50;
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(120);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.cancel();
+            }
+        });
+        sleep(100);
+        assertTrue(o.publishCancelled);
+        assertTrue(o.published.get() < 10);
+        assertEquals(-1, o.pagesWhenDone);
+    }
+
+    public class DependentObligation extends Obligation {
+        final List<String> calls = new ArrayList<String>(); // guarded by itself
+
+        private void log(String call) {
+            synchronized (calls) {
+                calls.add(call);
+            }
+        }
+
+        @Provides(1)
+        @Async
+        @Streaming
+        String chunks() {
+            for (int i = 0; i < 3; i++)
+                publish(1, "c" + i);
+            return "all";
+        }
+
+        @Consumes(1)
+        void consume(String chunk) {
+            sleep(20);
+            log("consume " + chunk);
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        String dependent(String all) {
+            log("dependent");
+            return all;
+        }
+
+        @Needs(2)
+        @Goal
+        void done(String all) {
+            log("done");
+        }
+    }
+
+    public void testAsyncDependentRunsAfterChunks() throws Throwable {
+        final DependentObligation o = new DependentObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(300);
+        synchronized (o.calls) {
+            assertEquals("[consume c0, consume c1, consume c2, dependent, done]", o.calls.toString());
+        }
+    }
+
+    public class ReloadingObligation extends Obligation {
+        final AtomicInteger runs = new AtomicInteger();
+        final List<String> items = new ArrayList<String>(); // only used on the main thread
+        volatile boolean stopped = false;
+        volatile String shown;
+
+        @Provides(1)
+        @Async
+        @Streaming(buffer = 1)
+        String items() {
+            int run = runs.incrementAndGet();
+            try {
+                for (int i = 0; i < 5; i++)
+                    publish(1, run + ":" + i);
+            } catch (CancellationException e) {
+                stopped = true;
+                return null;
+            }
+            return "run " + run;
+        }
+
+        @Consumes(1)
+        void item(String item) {
+            items.add(item);
+            sleep(30);
+        }
+
+        @Needs(1)
+        @Goal
+        void done(String all) {
+            shown = all;
+        }
+
+        void reload() {
+            invalidate(1);
+        }
+    }
+
+    public void testInvalidateWhilePublishing() throws Throwable {
+        final ReloadingObligation o = new ReloadingObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(50);
+        final List<String> before = new ArrayList<String>();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                before.addAll(o.items);
+                o.reload();
+            }
+        });
+        sleep(400);
+        // the first run is stopped, and nothing it published is consumed after the reload
+        assertTrue(o.stopped);
+        assertEquals(2, o.runs.get());
+        List<String> expected = new ArrayList<String>(before);
+        for (int i = 0; i < 5; i++)
+            expected.add("2:" + i);
+        assertEquals(expected.toString(), o.items.toString());
+        assertEquals("run 2", o.shown);
+    }
+
+    public static class SyncStreamingObligation extends Obligation {
+        @Provides(1)
+        @Streaming
+        int sync() {
+            return 1;
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) { }
+    }
+
+    public void testStreamingRequiresAsync() {
+        String error = Obligation.checkObligation(SyncStreamingObligation.class);
+        assertNotNull(error);
+        assertTrue(error.contains("@Streaming"));
+    }
+}
@@ -0,0 +1,111 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class TimeoutTest extends JvmTestCase {
+    public class SlowObligation extends Obligation {
+        volatile boolean interrupted = false;
+        Throwable exception;
+        int result = 0;
+
+        int block(int value) {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            return value;
+        }
+
+        @Override
+        protected void onException(ExceptionWrapper exceptionWrapper, int objectId) {
+            exception = exceptionWrapper.exception;
+            exceptionWrapper.useResult(-1);
+        }
+    }
+
+    public class TimeoutObligation extends SlowObligation {
+        @Provides(1)
+        @Async
+        @Timeout(100)
+        int slow() {
+            return block(1);
+        }
+
+        @Provides(2)
+        @Async
+        @Timeout(1000)
+        int fast() {
+            return 2;
+        }
+
+        @Needs({1, 2})
+        @Goal
+        void done(int a, int b) {
+            result = a + b;
+        }
+    }
+
+    public class DeadlineObligation extends SlowObligation {
+        @Provides(1)
+        @Async
+        int slow() {
+            return block(1);
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) {
+            result = a;
+        }
+    }
+
+    public void testTimeout() throws Throwable {
+        final TimeoutObligation o = new TimeoutObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(400);
+        assertTrue(o.interrupted);
+        assertTrue(o.exception instanceof TimeoutException);
+        assertEquals(1, o.result); // -1 + 2
+    }
+
+    public void testDeadline() throws Throwable {
+        final DeadlineObligation o = new DeadlineObligation();
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill(100, TimeUnit.MILLISECONDS);
+            }
+        });
+        sleep(400);
+        assertTrue(o.interrupted);
+        assertTrue(o.exception instanceof TimeoutException);
+        assertEquals(-1, o.result);
+    }
+
+    public void testTimeoutRequiresAsync() {
+        String error = Obligation.checkObligation(SyncTimeoutObligation.class);
+        assertNotNull(error);
+        assertTrue(error.contains("@Timeout"));
+    }
+
+    public static class SyncTimeoutObligation extends Obligation {
+        @Provides(1)
+        @Timeout(100)
+        int sync() {
+            return 1;
+        }
+
+        @Needs(1)
+        @Goal
+        void done(int a) { }
+    }
+}
@@ -0,0 +1,165 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TracingTest extends JvmTestCase {
+    public static class ArticleObligation extends Obligation {
+        String shown;
+
+        @Provides(1)
+        String id() {
+            return "42";
+        }
+
+        @Provides(2)
+        @Needs(1)
+        @Async
+        String load(String id) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return "article " + id;
+        }
+
+        @Needs(2)
+        @Goal
+        void show(String article) {
+            shown = article;
+        }
+    }
+
+    static class EventLog extends ObligationListener {
+        final List<String> events = new ArrayList<String>();
+        volatile Thread mainThread;
+        volatile Thread loadThread;
+
+        @Override
+        public synchronized void onFulfill(Obligation obligation, long time) {
+            events.add("fulfill");
+            mainThread = Thread.currentThread();
+        }
+
+        @Override
+        public synchronized void onReady(Obligation obligation, String method, long time) {
+            events.add("ready " + method);
+        }
+
+        @Override
+        public synchronized void onRun(Obligation obligation, String method, Thread thread, long start, long end) {
+            assertTrue(end >= start);
+            events.add("run " + method);
+            if (method.equals("load"))
+                loadThread = thread;
+        }
+
+        @Override
+        public synchronized void onDelivered(Obligation obligation, String method, long time) {
+            events.add("delivered " + method);
+        }
+
+        @Override
+        public synchronized void onComplete(Obligation obligation, long time) {
+            events.add("complete");
+        }
+
+        @Override
+        public synchronized void onCancel(Obligation obligation, long time) {
+            events.add("cancel");
+        }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testEvents() throws Throwable {
+        ArticleObligation o = new ArticleObligation();
+        EventLog log = new EventLog();
+        o.setListener(log);
+        fulfill(o);
+        sleep(200);
+        assertEquals("article 42", o.shown);
+        assertEquals("[fulfill, ready id, run id, ready load, run load, delivered load, ready show, run show, complete]", log.events.toString());
+        assertNotNull(log.loadThread);
+        assertNotSame(log.mainThread, log.loadThread);
+    }
+
+    public void testCancelEvent() throws Throwable {
+        final ArticleObligation o = new ArticleObligation();
+        EventLog log = new EventLog();
+        o.setListener(log);
+        fulfill(o);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.cancel(true);
+            }
+        });
+        sleep(200);
+        assertNull(o.shown);
+        // the interrupted load isn't reported after the cancellation
+        assertEquals("[fulfill, ready id, run id, ready load, cancel]", log.events.toString());
+    }
+
+    public void testDefaultListener() throws Throwable {
+        EventLog log = new EventLog();
+        Obligation.setDefaultListener(log);
+        try {
+            ArticleObligation o = new ArticleObligation();
+            fulfill(o);
+            sleep(200);
+        } finally {
+            Obligation.setDefaultListener(null);
+        }
+        assertEquals("complete", log.events.get(log.events.size() - 1));
+
+        // obligations fulfilled after removing it aren't traced anymore
+        fulfill(new ArticleObligation());
+        sleep(200);
+        assertEquals(9, log.events.size());
+    }
+
+    public void testChromeTrace() throws Throwable {
+        ArticleObligation o = new ArticleObligation();
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder();
+        o.setListener(recorder);
+        fulfill(o);
+        sleep(200);
+        String trace = recorder.toString();
+        assertTrue(trace.startsWith("{\"traceEvents\":["));
+        assertTrue(trace.contains("\"ph\":\"M\",\"name\":\"thread_name\""));
+        assertTrue(trace.contains("\"ph\":\"X\",\"name\":\"load\",\"cat\":\"ArticleObligation\""));
+        assertTrue(trace.contains("\"queueWait\":"));
+        assertTrue(trace.contains("\"name\":\"load delivered\""));
+        assertTrue(trace.contains("\"hop\":"));
+        assertTrue(trace.contains("\"name\":\"ArticleObligation\",\"cat\":\"obligation\""));
+        assertTrue(trace.trim().endsWith("}"));
+    }
+
+    public void testChromeTraceCancelled() throws Throwable {
+        final ArticleObligation o = new ArticleObligation();
+        ChromeTraceRecorder recorder = new ChromeTraceRecorder();
+        o.setListener(recorder);
+        fulfill(o);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.cancel(true);
+            }
+        });
+        sleep(200);
+        String trace = recorder.toString();
+        assertTrue(trace.contains("\"name\":\"ArticleObligation cancelled\",\"cat\":\"obligation\""));
+        assertFalse(trace.contains("\"name\":\"load\""));
+    }
+}
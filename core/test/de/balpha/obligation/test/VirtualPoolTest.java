@@ -0,0 +1,101 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualPoolTest extends JvmTestCase {
+    private static final int FETCHES = 8;
+
+    @DefaultPool(Pools.VIRTUAL)
+    public class BlockingObligation extends Obligation {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger(); // the most fetches that were blocked at once
+        int sum = 0;
+
+        private int fetch(int i) {
+            threads.add(Thread.currentThread().getName());
+            int now = running.incrementAndGet();
+            int most;
+            while (now > (most = mostRunning.get()) && !mostRunning.compareAndSet(most, now)) { }
+            sleep(100);
+            running.decrementAndGet();
+            return i;
+        }
+
+        @Provides(1) @Async int f1() { return fetch(1); }
+        @Provides(2) @Async int f2() { return fetch(2); }
+        @Provides(3) @Async int f3() { return fetch(3); }
+        @Provides(4) @Async int f4() { return fetch(4); }
+        @Provides(5) @Async int f5() { return fetch(5); }
+        @Provides(6) @Async int f6() { return fetch(6); }
+        @Provides(7) @Async int f7() { return fetch(7); }
+        @Provides(8) @Async(pool = Pools.COMPUTE) int f8() { return fetch(8); }
+
+        @Needs({1, 2, 3, 4, 5, 6, 7, 8})
+        @Goal
+        void done(int a, int b, int c, int d, int e, int f, int g, int h) {
+            sum = a + b + c + d + e + f + g + h;
+        }
+    }
+
+    public class PlainObligation extends Obligation {
+        String thread;
+
+        @Provides(1)
+        @Async
+        int foo() {
+            thread = Thread.currentThread().getName();
+            return 1;
+        }
+
+        @Needs(1)
+        @Goal
+        void done() { }
+    }
+
+    private void fulfill(final Obligation o) throws Throwable {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+    }
+
+    public void testClassDefault() throws Throwable {
+        BlockingObligation o = new BlockingObligation();
+        fulfill(o);
+        // well short of the time the fetches would take one after the other
+        sleep(100 * FETCHES / 2);
+        assertEquals(36, o.sum);
+        assertTrue(o.threads.contains("Obligation compute"));
+        if (!Pools.hasVirtualThreads()) {
+            assertTrue(o.threads.contains("Obligation io"));
+            assertTrue(o.mostRunning.get() >= 4); // the io pool has at least 4 threads
+        } else {
+            assertTrue(o.threads.contains("")); // virtual threads have no name
+            assertEquals(FETCHES, o.mostRunning.get()); // one thread each
+        }
+    }
+
+    public void testGlobalDefault() throws Throwable {
+        Pools.setDefault(Pools.IO);
+        try {
+            PlainObligation o = new PlainObligation();
+            fulfill(o);
+            sleep(100);
+            assertEquals("Obligation io", o.thread);
+        } finally {
+            Pools.setDefault(null);
+        }
+        PlainObligation o = new PlainObligation();
+        fulfill(o);
+        sleep(100);
+        assertEquals("Obligation worker", o.thread);
+    }
+}
@@ -0,0 +1,555 @@
+package de.balpha.obligation.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a {@code $$ObligationBinding} class for every obligation class, so that at runtime Obligation
+ * neither has to find the obligation methods through reflection nor call them through {@code Method.invoke()}.
+ *
+ * The processor performs the same checks as {@code Obligation.checkObligation()}. If a class doesn't pass them,
+ * or if it has private obligation methods that generated code couldn't call, no binding is generated, and
+ * Obligation falls back to reflection for that class.
+ */
+@SupportedAnnotationTypes({
+        ObligationProcessor.PROVIDES,
+        ObligationProcessor.NEEDS,
+        ObligationProcessor.GOAL,
+        ObligationProcessor.ASYNC,
+        ObligationProcessor.TIMEOUT,
+        ObligationProcessor.RETRY,
+        ObligationProcessor.CACHED,
+        ObligationProcessor.SHARED,
+        ObligationProcessor.BATCHED,
+        ObligationProcessor.STREAMING,
+        ObligationProcessor.CONSUMES
+})
+public class ObligationProcessor extends AbstractProcessor {
+    static final String OBLIGATION = "de.balpha.obligation.Obligation";
+    static final String PROVIDES = "de.balpha.obligation.Provides";
+    static final String NEEDS = "de.balpha.obligation.Needs";
+    static final String GOAL = "de.balpha.obligation.Goal";
+    static final String ASYNC = "de.balpha.obligation.Async";
+    static final String TIMEOUT = "de.balpha.obligation.Timeout";
+    static final String RETRY = "de.balpha.obligation.Retry";
+    static final String CACHED = "de.balpha.obligation.Cached";
+    static final String SHARED = "de.balpha.obligation.Shared";
+    static final String BATCHED = "de.balpha.obligation.Batched";
+    static final String STREAMING = "de.balpha.obligation.Streaming";
+    static final String CONSUMES = "de.balpha.obligation.Consumes";
+    static final String SUFFIX = "$$ObligationBinding";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Messager mMessager;
+    private Filer mFiler;
+
+    private static class Method {
+        ExecutableElement element;
+        int provides; // 0 if not a provider
+        int[] needs;
+        int parameterCount;
+        boolean async;
+        String pool;
+        boolean goal;
+        long timeout; // -1 if none
+        int retryAttempts; // 0 if not retried
+        long retryBackoff;
+        double retryJitter;
+        boolean cached;
+        long cacheTtl;
+        int cacheMaxEntries;
+        boolean shared;
+        boolean batched;
+        long batchWindow;
+        int batchMaxSize;
+        TypeMirror resultType; // the list element type for @Batched methods
+        int streamBuffer;
+        int consumes; // the object id, or 0
+    }
+
+    private static class InvalidObligationException extends Exception {
+        final Element element;
+
+        InvalidObligationException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+    }
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mMessager = processingEnv.getMessager();
+        mFiler = processingEnv.getFiler();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement obligation = mElements.getTypeElement(OBLIGATION);
+        if (obligation == null)
+            return false;
+        LinkedHashSet<TypeElement> classes = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.METHOD)
+                    classes.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+        for (TypeElement cls : classes) {
+            if (!mTypes.isSubtype(mTypes.erasure(cls.asType()), mTypes.erasure(obligation.asType())))
+                continue;
+            if (!isReachable(cls))
+                continue;
+            try {
+                List<Method> methods = collectMethods(cls);
+                if (methods != null)
+                    writeBinding(cls, methods);
+            } catch (InvalidObligationException e) {
+                // not an error: the class may be broken on purpose (e.g. to test checkObligation()), and it will fail at runtime anyway
+                mMessager.printMessage(Diagnostic.Kind.WARNING, "Invalid obligation " + cls.getQualifiedName() + ": " + e.getMessage(), e.element);
+            } catch (IOException e) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "Could not write obligation binding: " + e.getMessage(), cls);
+            }
+        }
+        return false;
+    }
+
+    // whether code in the same package can refer to the class
+    private static boolean isReachable(TypeElement cls) {
+        Element e = cls;
+        while (e.getKind().isClass() || e.getKind().isInterface()) {
+            TypeElement te = (TypeElement) e;
+            if (te.getNestingKind() == NestingKind.LOCAL || te.getNestingKind() == NestingKind.ANONYMOUS)
+                return false;
+            if (te.getModifiers().contains(Modifier.PRIVATE))
+                return false;
+            e = te.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(name))
+                return mirror;
+        }
+        return null;
+    }
+
+    private static Object getValue(AnnotationMirror mirror) {
+        return getValue(mirror, "value");
+    }
+
+    // null if the value isn't given explicitly
+    private static Object getValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name))
+                return entry.getValue().getValue();
+        }
+        return null;
+    }
+
+    private static int[] getIntArrayValue(AnnotationMirror mirror) {
+        Object value = getValue(mirror);
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            int[] result = new int[list.size()];
+            for (int i = 0; i < result.length; i++)
+                result[i] = (Integer) ((AnnotationValue) list.get(i)).getValue();
+            return result;
+        }
+        return new int[] { (Integer) value }; // a single value without braces
+    }
+
+    // mirrors Class.isAssignableFrom(), which is what Obligation.buildInstructionSet uses -- in particular, no boxing
+    private boolean isAssignable(TypeMirror from, TypeMirror to) {
+        if (from.getKind().isPrimitive() || to.getKind().isPrimitive())
+            return mTypes.isSameType(from, to);
+        return mTypes.isAssignable(mTypes.erasure(from), mTypes.erasure(to));
+    }
+
+    // the type of the data a provider method provides; for a @Batched one, that's the type of the list elements
+    private TypeMirror providedType(ExecutableElement element) {
+        if (getAnnotation(element, BATCHED) != null)
+            return listElementType(element.getReturnType());
+        return element.getReturnType();
+    }
+
+    // the T in List<T>, or Object if it can't be told
+    private TypeMirror listElementType(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            List<? extends TypeMirror> args = ((DeclaredType) type).getTypeArguments();
+            if (args.size() == 1) {
+                TypeMirror arg = args.get(0);
+                if (arg.getKind() == TypeKind.WILDCARD)
+                    arg = ((WildcardType) arg).getExtendsBound();
+                if (arg != null && (arg.getKind() == TypeKind.DECLARED || arg.getKind() == TypeKind.ARRAY))
+                    return arg;
+            }
+        }
+        return mElements.getTypeElement("java.lang.Object").asType();
+    }
+
+    // returns null if no binding can be generated
+    private List<Method> collectMethods(TypeElement cls) throws InvalidObligationException {
+        List<ExecutableElement> elements = ElementFilter.methodsIn(cls.getEnclosedElements());
+        HashMap<Integer, TypeMirror> providerTypes = new HashMap<Integer, TypeMirror>();
+        HashSet<Integer> streamingIds = new HashSet<Integer>();
+        for (ExecutableElement element : elements) {
+            AnnotationMirror provides = getAnnotation(element, PROVIDES);
+            if (provides == null)
+                continue;
+            int val = (Integer) getValue(provides);
+            if (val <= 0)
+                throw new InvalidObligationException("Obligation object ids must be positive; found " + val, element);
+            if (providerTypes.containsKey(val))
+                throw new InvalidObligationException("multiple Obligation methods provide object id " + val, element);
+            providerTypes.put(val, providedType(element));
+            if (getAnnotation(element, STREAMING) != null)
+                streamingIds.add(val);
+        }
+
+        ArrayList<Method> methods = new ArrayList<Method>();
+        ExecutableElement privateMethod = null;
+        for (ExecutableElement element : elements) {
+            AnnotationMirror needs = getAnnotation(element, NEEDS);
+            AnnotationMirror provides = getAnnotation(element, PROVIDES);
+            boolean isGoal = getAnnotation(element, GOAL) != null;
+            AnnotationMirror consumes = getAnnotation(element, CONSUMES);
+            if (consumes != null) {
+                String name = element.getSimpleName().toString();
+                if (provides != null || isGoal || needs != null)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Consumes, so it can't be a provider or a goal, or have @Needs()", element);
+                if (element.getParameters().size() != 1)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Consumes, so it must take exactly one parameter", element);
+                int consumedId = (Integer) getValue(consumes);
+                if (!streamingIds.contains(consumedId))
+                    throw new InvalidObligationException("Obligation method " + name + " consumes object id " + consumedId + " which isn't provided by a @Streaming method", element);
+                if (element.getModifiers().contains(Modifier.PRIVATE) && privateMethod == null)
+                    privateMethod = element;
+                Method method = new Method();
+                method.element = element;
+                method.needs = new int[0];
+                method.parameterCount = 1;
+                method.timeout = -1;
+                method.resultType = element.getReturnType();
+                method.consumes = consumedId;
+                methods.add(method);
+                continue;
+            }
+            boolean typeCheckOnly = false;
+            if (provides == null && !isGoal) {
+                if (needs != null)
+                    typeCheckOnly = true;
+                else
+                    continue;
+            }
+            String name = element.getSimpleName().toString();
+            List<? extends VariableElement> params = element.getParameters();
+            if (needs == null && params.size() > 0)
+                throw new InvalidObligationException("Obligation method " + name + " has formal parameters but not @Needs()", element);
+            int[] neededIds = needs == null ? new int[0] : getIntArrayValue(needs);
+            if (params.size() > neededIds.length)
+                throw new InvalidObligationException("Obligation method " + name + " has more parameters than @Needs() arguments", element);
+            if (typeCheckOnly && params.size() < neededIds.length)
+                throw new InvalidObligationException("Obligation method " + name + " has fewer parameters than @Needs() arguments, and is neither a goal nor a provider. This is very likely a mistake.", element);
+            for (int i = 0; i < neededIds.length; i++) {
+                TypeMirror provided = providerTypes.get(neededIds[i]);
+                if (provided == null)
+                    throw new InvalidObligationException("Obligation method " + name + " needs object id " + neededIds[i] + " which isn't provided", element);
+                boolean isBatched = getAnnotation(element, BATCHED) != null;
+                if (i < params.size() && isBatched && (!isAssignable(mElements.getTypeElement("java.util.List").asType(), params.get(i).asType()) || !isAssignable(provided, listElementType(params.get(i).asType()))))
+                    throw new InvalidObligationException("Obligation method " + name + " parameter " + i + " has type " + params.get(i).asType() + " but needs a List of object id " + neededIds[i] + " which is " + provided, element);
+                if (i < params.size() && !isBatched && !isAssignable(provided, params.get(i).asType()))
+                    throw new InvalidObligationException("Obligation method " + name + " parameter " + i + " has type " + params.get(i).asType() + " but needs object id " + neededIds[i] + " which is " + provided, element);
+            }
+
+            AnnotationMirror timeout = getAnnotation(element, TIMEOUT);
+            if (timeout != null && getAnnotation(element, ASYNC) == null)
+                throw new InvalidObligationException("Obligation method " + name + " has a @Timeout but isn't @Async", element);
+            if (timeout != null && (Long) getValue(timeout) <= 0)
+                throw new InvalidObligationException("Obligation method " + name + " has a @Timeout that isn't positive", element);
+            AnnotationMirror retry = getAnnotation(element, RETRY);
+            int retryAttempts = 0;
+            long retryBackoff = 100;
+            double retryJitter = 0;
+            if (retry != null) {
+                if (getAnnotation(element, ASYNC) == null)
+                    throw new InvalidObligationException("Obligation method " + name + " has a @Retry but isn't @Async", element);
+                if (getAnnotation(element, STREAMING) != null)
+                    throw new InvalidObligationException("Obligation method " + name + " can't be @Streaming and also have a @Retry", element);
+                Object maxAttempts = getValue(retry, "maxAttempts");
+                Object backoff = getValue(retry, "backoff");
+                Object jitter = getValue(retry, "jitter");
+                retryAttempts = maxAttempts != null ? (Integer) maxAttempts : 3;
+                if (backoff != null)
+                    retryBackoff = (Long) backoff;
+                if (jitter != null)
+                    retryJitter = (Double) jitter;
+                if (retryAttempts <= 0 || retryBackoff < 0 || retryJitter < 0 || retryJitter > 1)
+                    throw new InvalidObligationException("Obligation method " + name + " has invalid @Retry settings", element);
+            }
+            AnnotationMirror cached = getAnnotation(element, CACHED);
+            long cacheTtl = -1;
+            int cacheMaxEntries = 16;
+            if (cached != null) {
+                if (provides == null)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Cached but doesn't provide anything", element);
+                Object ttl = getValue(cached, "ttl");
+                Object maxEntries = getValue(cached, "maxEntries");
+                if (ttl != null)
+                    cacheTtl = (Long) ttl;
+                if (maxEntries != null)
+                    cacheMaxEntries = (Integer) maxEntries;
+                if (cacheMaxEntries <= 0)
+                    throw new InvalidObligationException("Obligation method " + name + " has a @Cached maxEntries that isn't positive", element);
+            }
+            boolean shared = getAnnotation(element, SHARED) != null;
+            if (shared && (provides == null || getAnnotation(element, ASYNC) == null))
+                throw new InvalidObligationException("Obligation method " + name + " is @Shared but isn't an @Async provider", element);
+            AnnotationMirror batched = getAnnotation(element, BATCHED);
+            long batchWindow = 0;
+            int batchMaxSize = 0;
+            if (batched != null) {
+                if (provides == null || getAnnotation(element, ASYNC) == null)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Batched but isn't an @Async provider", element);
+                if (shared)
+                    throw new InvalidObligationException("Obligation method " + name + " can't be both @Shared and @Batched", element);
+                if (!isAssignable(element.getReturnType(), mElements.getTypeElement("java.util.List").asType()))
+                    throw new InvalidObligationException("Obligation method " + name + " is @Batched but doesn't return a List", element);
+                if (neededIds.length != 1 || params.size() != 1)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Batched, so it must need exactly one object id and take a List of them", element);
+                Object window = getValue(batched, "window");
+                Object maxSize = getValue(batched, "maxSize");
+                if (window != null)
+                    batchWindow = (Long) window;
+                if (maxSize != null)
+                    batchMaxSize = (Integer) maxSize;
+            }
+            AnnotationMirror streaming = getAnnotation(element, STREAMING);
+            int streamBuffer = 0;
+            if (streaming != null) {
+                if (provides == null || getAnnotation(element, ASYNC) == null)
+                    throw new InvalidObligationException("Obligation method " + name + " is @Streaming but isn't an @Async provider", element);
+                if (shared || batched != null)
+                    throw new InvalidObligationException("Obligation method " + name + " can't be @Streaming and also @Shared or @Batched", element);
+                Object buffer = getValue(streaming, "buffer");
+                streamBuffer = buffer != null ? (Integer) buffer : 4;
+                if (streamBuffer <= 0)
+                    throw new InvalidObligationException("Obligation method " + name + " has a @Streaming buffer that isn't positive", element);
+            }
+
+            if (typeCheckOnly)
+                continue;
+
+            if (element.getModifiers().contains(Modifier.PRIVATE) && privateMethod == null)
+                privateMethod = element;
+            Method method = new Method();
+            method.element = element;
+            method.provides = provides == null ? 0 : (Integer) getValue(provides);
+            method.needs = neededIds;
+            method.parameterCount = params.size();
+            AnnotationMirror async = getAnnotation(element, ASYNC);
+            method.async = async != null;
+            if (async != null) {
+                Object pool = getValue(async, "pool");
+                method.pool = pool != null ? (String) pool : "";
+            }
+            method.goal = isGoal;
+            method.timeout = timeout != null ? (Long) getValue(timeout) : -1;
+            method.retryAttempts = retryAttempts;
+            method.retryBackoff = retryBackoff;
+            method.retryJitter = retryJitter;
+            method.cached = cached != null;
+            method.cacheTtl = cacheTtl;
+            method.cacheMaxEntries = cacheMaxEntries;
+            method.shared = shared;
+            method.batched = batched != null;
+            method.batchWindow = batchWindow;
+            method.batchMaxSize = batchMaxSize;
+            method.resultType = providedType(element);
+            method.streamBuffer = streamBuffer;
+            methods.add(method);
+        }
+
+        checkCircularDependencies(methods);
+
+        if (privateMethod != null) {
+            mMessager.printMessage(Diagnostic.Kind.NOTE, "No obligation binding generated for " + cls.getQualifiedName() + " because method " + privateMethod.getSimpleName() + " is private; it will use reflection", privateMethod);
+            return null;
+        }
+        return methods;
+    }
+
+    private static void checkCircularDependencies(List<Method> methods) throws InvalidObligationException {
+        HashSet<Integer> fulfilled = new HashSet<Integer>();
+        LinkedList<Method> unfulfilled = new LinkedList<Method>(methods);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Iterator<Method> it = unfulfilled.iterator();
+            while (it.hasNext()) {
+                Method method = it.next();
+                boolean ok = true;
+                for (int id : method.needs) {
+                    if (!fulfilled.contains(id)) {
+                        ok = false;
+                        break;
+                    }
+                }
+                if (ok) {
+                    if (method.provides > 0)
+                        fulfilled.add(method.provides);
+                    it.remove();
+                    changed = true;
+                }
+            }
+        }
+        if (!unfulfilled.isEmpty())
+            throw new InvalidObligationException("Obligation has circular dependencies", unfulfilled.getFirst().element);
+    }
+
+    private String stringLiteral(String s) {
+        return s == null ? "null" : mElements.getConstantExpression(s);
+    }
+
+    private String classLiteral(TypeMirror type) {
+        return mTypes.erasure(type).toString() + ".class";
+    }
+
+    // how a generated binding reads argument i of the given type, see ObligationBinding.Arguments
+    private String argument(TypeMirror type, int i) {
+        switch (type.getKind()) {
+            case LONG: return "args.getLong(" + i + ")";
+            case INT: case SHORT: case BYTE: case CHAR: return "(" + type + ") args.getLong(" + i + ")";
+            case BOOLEAN: return "args.getLong(" + i + ") != 0";
+            case DOUBLE: return "args.getDouble(" + i + ")";
+            case FLOAT: return "(float) args.getDouble(" + i + ")";
+            default: return "(" + mTypes.erasure(type) + ") args.get(" + i + ")";
+        }
+    }
+
+    // null for methods that don't return a primitive type, else whether it's a floating point one
+    private static Boolean floatingPoint(TypeMirror type) {
+        switch (type.getKind()) {
+            case DOUBLE: case FLOAT: return Boolean.TRUE;
+            case LONG: case INT: case SHORT: case BYTE: case CHAR: case BOOLEAN: return Boolean.FALSE;
+            default: return null;
+        }
+    }
+
+    // writes the invoke variant for the methods whose return types floatingPoint() maps to the given value
+    private void writeInvoke(StringBuilder sb, String targetType, List<Method> methods, String returnType, String name, Boolean floatingPoint) {
+        boolean any = false;
+        for (Method method : methods) {
+            if (floatingPoint(method.element.getReturnType()) == floatingPoint)
+                any = true;
+        }
+        if (!any && floatingPoint != null)
+            return; // the base class's version throws
+        sb.append("\n    @Override\n");
+        sb.append("    @SuppressWarnings(\"unchecked\")\n");
+        sb.append("    protected ").append(returnType).append(" ").append(name)
+                .append("(int index, de.balpha.obligation.Obligation target, de.balpha.obligation.ObligationBinding.Arguments args) throws Throwable {\n");
+        sb.append("        ").append(targetType).append(" obligation = (").append(targetType).append(") target;\n");
+        sb.append("        switch (index) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            TypeMirror methodReturnType = method.element.getReturnType();
+            if (floatingPoint(methodReturnType) != floatingPoint)
+                continue;
+            boolean isVoid = methodReturnType.getKind() == TypeKind.VOID;
+            sb.append("            case ").append(i).append(": ");
+            if (!isVoid)
+                sb.append("return ");
+            sb.append("obligation.").append(method.element.getSimpleName()).append("(");
+            List<? extends VariableElement> params = method.element.getParameters();
+            for (int j = 0; j < params.size(); j++)
+                sb.append(j > 0 ? ", " : "").append(argument(params.get(j).asType(), j));
+            sb.append(")");
+            if (methodReturnType.getKind() == TypeKind.BOOLEAN)
+                sb.append(" ? 1 : 0");
+            sb.append(";");
+            if (isVoid)
+                sb.append(" return null;");
+            sb.append("\n");
+        }
+        sb.append("            default: throw new IllegalArgumentException(\"no obligation method with index \" + index);\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+    }
+
+    private void writeBinding(TypeElement cls, List<Method> methods) throws IOException {
+        String packageName = mElements.getPackageOf(cls).getQualifiedName().toString();
+        String binaryName = mElements.getBinaryName(cls).toString();
+        String simpleName = (packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName) + SUFFIX;
+        String targetType = mTypes.erasure(cls.asType()).toString();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by the Obligation annotation processor. Do not edit.\n");
+        if (packageName.length() > 0)
+            sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("public final class ").append(simpleName).append(" extends de.balpha.obligation.ObligationBinding {\n");
+        sb.append("    public ").append(simpleName).append("() {\n");
+        for (Method method : methods) {
+            sb.append("        declare(\"").append(method.element.getSimpleName()).append("\", ")
+                    .append(classLiteral(method.resultType)).append(", ")
+                    .append(method.provides).append(", new int[] {");
+            for (int i = 0; i < method.needs.length; i++)
+                sb.append(i > 0 ? ", " : "").append(method.needs[i]);
+            sb.append("}, ").append(method.parameterCount).append(", ")
+                    .append(method.async).append(", ").append(stringLiteral(method.pool)).append(", ")
+                    .append(method.goal).append(")");
+            if (method.timeout >= 0)
+                sb.append(".timeout(").append(method.timeout).append("L)");
+            if (method.retryAttempts > 0)
+                sb.append(".retry(").append(method.retryAttempts).append(", ").append(method.retryBackoff).append("L, ").append(method.retryJitter).append(")");
+            if (method.shared)
+                sb.append(".shared()");
+            if (method.batched)
+                sb.append(".batched(").append(method.batchWindow).append("L, ").append(method.batchMaxSize).append(")");
+            if (method.streamBuffer > 0)
+                sb.append(".streaming(").append(method.streamBuffer).append(")");
+            if (method.consumes > 0)
+                sb.append(".consumes(").append(method.consumes).append(")");
+            if (method.cached)
+                sb.append(".cached(").append(method.cacheTtl).append("L, ").append(method.cacheMaxEntries).append(")");
+            sb.append(";\n");
+        }
+        sb.append("    }\n");
+        // each method is called by the invoke variant for its return type, so primitives are never boxed
+        writeInvoke(sb, targetType, methods, "Object", "invoke", null);
+        writeInvoke(sb, targetType, methods, "long", "invokeLong", Boolean.FALSE);
+        writeInvoke(sb, targetType, methods, "double", "invokeDouble", Boolean.TRUE);
+        sb.append("}\n");
+
+        JavaFileObject file = mFiler.createSourceFile(packageName.length() > 0 ? packageName + "." + simpleName : simpleName, cls);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.Async;
+import de.balpha.obligation.Goal;
+import de.balpha.obligation.Needs;
+import de.balpha.obligation.Obligation;
+import de.balpha.obligation.Provides;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the obligation methods aren't private, so the annotation processor generates a binding for this class
+public class BindingTest extends BaseTest {
+    public static class BoundObligation extends Obligation {
+        int result;
+        List<String> list;
+        boolean done = false;
+
+        @Provides(1)
+        int start() {
+            return 3;
+        }
+
+        @Needs(1)
+        @Provides(2)
+        @Async
+        int twice(int input) {
+            return 2 * input;
+        }
+
+        @Provides(3)
+        List<String> list() {
+            ArrayList<String> result = new ArrayList<String>();
+            result.add("Hello");
+            return result;
+        }
+
+        @Provides(4)
+        void nothing() { }
+
+        @Needs({2, 3, 4})
+        @Goal
+        void done(int input, List<String> list) {
+            result = input;
+            this.list = list;
+        }
+
+        @Override
+        protected void onComplete() {
+            done = true;
+        }
+    }
+
+    public void testBindingGenerated() throws ClassNotFoundException {
+        Class.forName(BoundObligation.class.getName() + "$$ObligationBinding");
+    }
+
+    public void testBound() throws Throwable {
+        final BoundObligation o = new BoundObligation();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                o.fulfill();
+            }
+        });
+        sleep(200);
+        assertTrue(o.done);
+        assertEquals(6, o.result);
+        assertEquals("Hello", o.list.get(0));
+    }
+}
@@ -0,0 +1,91 @@
+package de.balpha.obligation.test;
+
+import android.util.Log;
+import de.balpha.obligation.Goal;
+import de.balpha.obligation.Needs;
+import de.balpha.obligation.Obligation;
+import de.balpha.obligation.Provides;
+
+// Compares calling obligation methods through reflection with calling them through a generated binding.
+// Both obligations are identical, except that the reflective one has private methods, which keeps the
+// annotation processor away from it. Results go to logcat under the tag "InvokerBenchmark".
+public class InvokerBenchmark extends BaseTest {
+    private static final String TAG = "InvokerBenchmark";
+    private static final int ROUNDS = 2000;
+
+    public static class ReflectiveChain extends Obligation {
+        int result;
+
+        @Provides(1)
+        private int a() { return 1; }
+
+        @Needs(1) @Provides(2)
+        private int b(int x) { return x + 1; }
+
+        @Needs(2) @Provides(3)
+        private int c(int x) { return x + 1; }
+
+        @Needs(3) @Provides(4)
+        private int d(int x) { return x + 1; }
+
+        @Needs({4, 1}) @Provides(5)
+        private int e(int x, int y) { return x + y; }
+
+        @Needs(5) @Goal
+        private void done(int x) { result = x; }
+    }
+
+    public static class BoundChain extends Obligation {
+        int result;
+
+        @Provides(1)
+        int a() { return 1; }
+
+        @Needs(1) @Provides(2)
+        int b(int x) { return x + 1; }
+
+        @Needs(2) @Provides(3)
+        int c(int x) { return x + 1; }
+
+        @Needs(3) @Provides(4)
+        int d(int x) { return x + 1; }
+
+        @Needs({4, 1}) @Provides(5)
+        int e(int x, int y) { return x + y; }
+
+        @Needs(5) @Goal
+        void done(int x) { result = x; }
+    }
+
+    private static long runReflective(int rounds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            ReflectiveChain o = new ReflectiveChain();
+            o.fulfill();
+            assertEquals(5, o.result);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runBound(int rounds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            BoundChain o = new BoundChain();
+            o.fulfill();
+            assertEquals(5, o.result);
+        }
+        return System.nanoTime() - start;
+    }
+
+    @android.test.UiThreadTest
+    public void testInvokers() {
+        // warm up, and get the instruction sets built
+        runReflective(ROUNDS / 10);
+        runBound(ROUNDS / 10);
+
+        long reflective = runReflective(ROUNDS);
+        long bound = runBound(ROUNDS);
+        Log.i(TAG, "reflection: " + reflective / ROUNDS + " ns per fulfill()");
+        Log.i(TAG, "binding: " + bound / ROUNDS + " ns per fulfill()");
+    }
+}
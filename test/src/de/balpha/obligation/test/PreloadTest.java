@@ -0,0 +1,53 @@
+package de.balpha.obligation.test;
+
+import de.balpha.obligation.Goal;
+import de.balpha.obligation.Needs;
+import de.balpha.obligation.Obligation;
+import de.balpha.obligation.Provides;
+
+public class PreloadTest extends BaseTest {
+    public static class PreloadedObligation extends Obligation {
+        String result;
+
+        @Provides(1)
+        private String a() {
+            return "Hello";
+        }
+
+        @Needs(1)
+        @Goal
+        private void done(String s) {
+            result = s;
+        }
+    }
+
+    public static class BrokenObligation extends Obligation {
+        @Needs(1)
+        @Goal
+        private void foo(String bar) { }
+    }
+
+    private static class ShouldHaveThrownException extends RuntimeException {}
+
+    @SuppressWarnings("unchecked")
+    public void testPreload() throws Throwable {
+        Obligation.preload(PreloadedObligation.class, BrokenObligation.class);
+        sleep(100);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                PreloadedObligation o = new PreloadedObligation();
+                o.fulfill();
+                assertEquals("Hello", o.result);
+
+                try {
+                    new BrokenObligation().fulfill();
+                    throw new ShouldHaveThrownException();
+                } catch (RuntimeException e) {
+                    if (e instanceof ShouldHaveThrownException || !e.getMessage().contains("isn't provided"))
+                        throw e;
+                }
+            }
+        });
+    }
+}